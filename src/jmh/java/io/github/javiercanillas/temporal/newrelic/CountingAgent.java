@@ -0,0 +1,158 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.NewRelic;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatchers;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A minimal NewRelic {@link Agent} for benchmarks, only counting the calls reaching it. Against the
+ * no-op agent of NewRelic API, calls are empty methods the JIT removes, so benchmarks would not
+ * pay for handing them over to an agent at all; this one keeps them, at the cost of a counter.
+ * <br>
+ * {@link #install()} instruments {@link NewRelic#getAgent()} to return it and the {@link NewRelic}
+ * static methods to count their calls, as well as the ones they hand over to the agent. Every
+ * interface of the agent API is answered by a single proxy, so calls do not allocate their
+ * results, only the arguments of the proxy. Closing it restores the original class.
+ */
+public final class CountingAgent implements AutoCloseable {
+
+  private static final LongAdder CALLS = new LongAdder();
+  private static final Map<Class<?>, Object> PROXIES = new ConcurrentHashMap<>();
+  private static final Map<Class<?>, Object> DEFAULT_VALUES = new ConcurrentHashMap<>();
+  private static volatile Agent installed;
+
+  private final ResettableClassFileTransformer transformer;
+
+  private CountingAgent(final ResettableClassFileTransformer transformer) {
+    this.transformer = transformer;
+  }
+
+  /** Installs the counting agent behind {@link NewRelic}, once per benchmark trial. */
+  public static synchronized CountingAgent install() {
+    CALLS.reset();
+    installed = proxy(Agent.class);
+    return new CountingAgent(
+        new AgentBuilder.Default()
+            .disableClassFormatChanges()
+            .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
+            .type(ElementMatchers.is(NewRelic.class))
+            .transform(
+                (builder, type, classLoader, module, domain) ->
+                    builder
+                        .visit(Advice.to(GetAgentAdvice.class).on(ElementMatchers.named("getAgent")))
+                        .visit(
+                            Advice.to(StaticCallAdvice.class)
+                                .on(
+                                    ElementMatchers.isStatic()
+                                        .and(ElementMatchers.isPublic())
+                                        .and(ElementMatchers.returns(TypeDescription.VOID)))))
+            .installOn(ByteBuddyAgent.install()));
+  }
+
+  /** Returns how many calls reached the agent since it was installed. */
+  public long getCalls() {
+    return CALLS.sum();
+  }
+
+  @Override
+  public synchronized void close() {
+    installed = null;
+    transformer.reset(
+        ByteBuddyAgent.getInstrumentation(), AgentBuilder.RedefinitionStrategy.RETRANSFORMATION);
+  }
+
+  /** Called from instrumented {@link NewRelic#getAgent()}. */
+  public static Agent installedAgent() {
+    return installed;
+  }
+
+  /** Called from instrumented {@link NewRelic} static methods. */
+  public static void count() {
+    CALLS.increment();
+  }
+
+  @SuppressWarnings("unchecked")
+  private static <T> T proxy(final Class<T> type) {
+    return (T) PROXIES.computeIfAbsent(type, key ->
+        Proxy.newProxyInstance(
+            key.getClassLoader(),
+            new Class<?>[] {key},
+            (proxy, method, args) -> answer(proxy, method, args)));
+  }
+
+  private static Object answer(final Object proxy, final Method method, final Object[] args) {
+    switch (method.getName()) {
+      case "equals":
+        if (method.getDeclaringClass() == Object.class) {
+          return proxy == args[0];
+        }
+        break;
+      case "hashCode":
+        if (method.getDeclaringClass() == Object.class) {
+          return System.identityHashCode(proxy);
+        }
+        break;
+      case "toString":
+        if (method.getDeclaringClass() == Object.class) {
+          return CountingAgent.class.getSimpleName();
+        }
+        break;
+      default:
+        break;
+    }
+    CALLS.increment();
+    final var type = method.getReturnType();
+    if (type == void.class) {
+      return null;
+    } else if (type.isPrimitive()) {
+      return DEFAULT_VALUES.computeIfAbsent(type, key -> Array.get(Array.newInstance(key, 1), 0));
+    } else if (type == String.class) {
+      return "";
+    } else if (type == Map.class) {
+      return Collections.emptyMap();
+    } else if (type == List.class) {
+      return Collections.emptyList();
+    } else if (type == Set.class) {
+      return Collections.emptySet();
+    }
+    return type.isInterface() ? proxy(type) : null;
+  }
+
+  /** Inlined on exit of {@link NewRelic#getAgent()}. */
+  public static final class GetAgentAdvice {
+    private GetAgentAdvice() {}
+
+    @Advice.OnMethodExit
+    public static void exit(@Advice.Return(readOnly = false) Agent agent) {
+      final var installedAgent = CountingAgent.installedAgent();
+      if (installedAgent != null) {
+        agent = installedAgent;
+      }
+    }
+  }
+
+  /** Inlined on entry of {@link NewRelic} static methods returning nothing. */
+  public static final class StaticCallAdvice {
+    private StaticCallAdvice() {}
+
+    @Advice.OnMethodEnter
+    public static void enter() {
+      CountingAgent.count();
+    }
+  }
+}
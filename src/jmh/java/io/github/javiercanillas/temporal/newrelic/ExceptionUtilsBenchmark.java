@@ -0,0 +1,78 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/** Measures {@link ExceptionUtils#retrieveAdditionalData(Exception)} on shallow and deep types. */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ExceptionUtilsBenchmark {
+
+  private final Exception shallow = new IllegalStateException("shallow");
+  private final Exception deep = new PaymentDeclinedException();
+
+  @Benchmark
+  public Map<String, Object> shallowHierarchy() {
+    return ExceptionUtils.retrieveAdditionalData(shallow);
+  }
+
+  @Benchmark
+  public Map<String, Object> deepHierarchy() {
+    return ExceptionUtils.retrieveAdditionalData(deep);
+  }
+
+  public static class BusinessException extends RuntimeException {
+    public String getCode() {
+      return "BUSINESS";
+    }
+
+    public boolean isRetryable() {
+      return false;
+    }
+  }
+
+  public static class OrderException extends BusinessException {
+    public String getOrderId() {
+      return "order-1";
+    }
+
+    public int getLineCount() {
+      return 3;
+    }
+  }
+
+  public static class PaymentException extends OrderException {
+    public String getPaymentId() {
+      return "payment-1";
+    }
+
+    @Override
+    public String getCode() {
+      return "PAYMENT";
+    }
+  }
+
+  public static class PaymentDeclinedException extends PaymentException {
+    public String getReason() {
+      return "insufficient funds";
+    }
+
+    public long getAmount() {
+      return 1_000L;
+    }
+  }
+}
@@ -0,0 +1,92 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import io.temporal.api.common.v1.Payload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link NewRelicDistributedTraceContextPropagator} on each of its encodings and with its
+ * deserialization cache disabled (see {@link Setting}), with headers shaped like the ones NewRelic
+ * agent inserts and against NewRelic API without an agent attached.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class NewRelicDistributedTraceContextPropagatorBenchmark {
+
+  private static final Map<String, List<String>> HEADERS =
+      Map.of(
+          "newrelic",
+          List.of(
+              "eyJ2IjpbMCwxXSwiZCI6eyJ0eSI6IkFwcCIsImFjIjoiMTIzNDU2NyIsImFwIjoiODkwMTIzNCIsInRy"
+                  + "IjoiNGJmOTJmMzU3N2IzNGRhNmEzY2U5MjlkMGUwZTQ3MzYiLCJzYSI6dHJ1ZSwicHIiOjEuMn19"),
+          "traceparent",
+          List.of("00-4bf92f3577b34da6a3ce929d0e0e4736-00f067aa0ba902b7-01"),
+          "tracestate",
+          List.of("1234567@nr=0-0-1234567-8901234-00f067aa0ba902b7-e8b91a159289ff74-1-1.2-1"));
+
+  /** Propagator settings, each one built with the options enabling it. */
+  public enum Setting {
+    /** Default options, JSON payloads cached once decoded. */
+    JSON(NewRelicDistributedTraceContextPropagatorOptions.builder().build()),
+    /** Binary payloads, see {@link BinaryTraceHeadersCodec}. */
+    BINARY(
+        NewRelicDistributedTraceContextPropagatorOptions.builder()
+            .encoding(ContextEncoding.BINARY)
+            .build()),
+    /** JSON payloads decoded on every deserialization. */
+    JSON_UNCACHED(
+        NewRelicDistributedTraceContextPropagatorOptions.builder()
+            .deserializationCacheSize(0)
+            .build());
+
+    private final NewRelicDistributedTraceContextPropagatorOptions options;
+
+    Setting(final NewRelicDistributedTraceContextPropagatorOptions options) {
+      this.options = options;
+    }
+  }
+
+  @Param({"JSON", "BINARY", "JSON_UNCACHED"})
+  public Setting setting;
+
+  private NewRelicDistributedTraceContextPropagator propagator;
+  private Map<String, Payload> serialized;
+
+  @Setup
+  public void setup() {
+    propagator = new NewRelicDistributedTraceContextPropagator(setting.options);
+    serialized = propagator.serializeContext(HEADERS);
+  }
+
+  @Benchmark
+  public Map<String, Payload> serializeContext() {
+    return propagator.serializeContext(HEADERS);
+  }
+
+  @Benchmark
+  public Object deserializeContext() {
+    return propagator.deserializeContext(serialized);
+  }
+
+  @Benchmark
+  public Object getCurrentContext() {
+    return propagator.getCurrentContext();
+  }
+}
@@ -0,0 +1,158 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import io.github.javiercanillas.temporal.newrelic.CountingAgent;
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.TransactionSampler;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.common.interceptors.ActivityInboundCallsInterceptor;
+import io.temporal.common.interceptors.Header;
+import org.mockito.Mockito;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures the overhead {@link TraceActivityInboundCallsInterceptor} adds to an activity execution,
+ * on each of its execution paths (see {@link Path}), against NewRelic API without an agent attached
+ * (every call lands on its no-op agent) and with a {@link CountingAgent}. Executions carry server timestamps, so latencies are
+ * recorded too. Workflow interceptors need a workflow thread, so they are not covered here.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class TraceActivityInboundCallsInterceptorBenchmark {
+
+  /** Execution paths of the interceptor, each one built with the options enabling it. */
+  public enum Path {
+    /** Default options, every execution is a transaction. */
+    TRACED(TraceWorkerInterceptorOptions.builder().build(), false),
+    /** Executions not sampled, ignoring their transaction. */
+    UNSAMPLED(
+        TraceWorkerInterceptorOptions.builder()
+            .transactionSampler(TransactionSampler.builder().rate(0d).build())
+            .build(),
+        false),
+    /** Local activities recorded as metrics only. */
+    LIGHTWEIGHT_LOCAL(
+        TraceWorkerInterceptorOptions.builder().lightweightLocalActivities(true).build(), true),
+    /** Activity execution context wrapped to trace heartbeats. */
+    HEARTBEATS(TraceWorkerInterceptorOptions.builder().traceHeartbeats(true).build(), false);
+
+    private final TraceWorkerInterceptorOptions options;
+    private final boolean local;
+
+    Path(final TraceWorkerInterceptorOptions options, final boolean local) {
+      this.options = options;
+      this.local = local;
+    }
+  }
+
+  @Param({"TRACED", "UNSAMPLED", "LIGHTWEIGHT_LOCAL", "HEARTBEATS"})
+  public Path path;
+
+  @Param({"NO_OP", "COUNTING"})
+  public String agent;
+
+  private final ActivityInboundCallsInterceptor.ActivityInput input =
+      new ActivityInboundCallsInterceptor.ActivityInput(
+          new Header(new HashMap<>()), new Object[] {"argument"});
+  private final ActivityInboundCallsInterceptor.ActivityOutput output =
+      new ActivityInboundCallsInterceptor.ActivityOutput("result");
+  private final RuntimeException failure = new IllegalStateException("expected");
+  private final ActivityInboundCallsInterceptor next =
+      new ActivityInboundCallsInterceptor() {
+        @Override
+        public void init(final ActivityExecutionContext context) {
+          // DO NOTHING
+        }
+
+        @Override
+        public ActivityOutput execute(final ActivityInput input) {
+          return output;
+        }
+      };
+  private final ActivityInboundCallsInterceptor failingNext =
+      new ActivityInboundCallsInterceptor() {
+        @Override
+        public void init(final ActivityExecutionContext context) {
+          // DO NOTHING
+        }
+
+        @Override
+        public ActivityOutput execute(final ActivityInput input) {
+          throw failure;
+        }
+      };
+  private TraceActivityInboundCallsInterceptor interceptor;
+  private TraceActivityInboundCallsInterceptor failingInterceptor;
+  private CountingAgent countingAgent;
+
+  @Setup
+  public void setup() {
+    if ("COUNTING".equals(agent)) {
+      countingAgent = CountingAgent.install();
+    }
+    // stub only mocks do not record invocations, so they add as little as possible
+    final var info = Mockito.mock(ActivityInfo.class, Mockito.withSettings().stubOnly());
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    Mockito.doReturn("taskQueue").when(info).getActivityTaskQueue();
+    Mockito.doReturn(path.local).when(info).isLocal();
+    Mockito.doReturn(1).when(info).getAttempt();
+    Mockito.doReturn(1_000L).when(info).getScheduledTimestamp();
+    Mockito.doReturn(1_000L).when(info).getCurrentAttemptScheduledTimestamp();
+    Mockito.doReturn(1_010L).when(info).getStartedTimestamp();
+    final var context =
+        Mockito.mock(ActivityExecutionContext.class, Mockito.withSettings().stubOnly());
+    Mockito.doReturn(info).when(context).getInfo();
+    interceptor = new TraceActivityInboundCallsInterceptor(path.options, next);
+    interceptor.init(context);
+    failingInterceptor =
+        new TraceActivityInboundCallsInterceptor(
+            path.options.toBuilder().errorDeduplicator(ErrorDeduplicator.builder().build()).build(),
+            failingNext);
+    failingInterceptor.init(context);
+  }
+
+  @TearDown
+  public void tearDown() {
+    if (countingAgent != null) {
+      countingAgent.close();
+    }
+  }
+
+  @Benchmark
+  public ActivityInboundCallsInterceptor.ActivityOutput baseline() {
+    return next.execute(input);
+  }
+
+  @Benchmark
+  public ActivityInboundCallsInterceptor.ActivityOutput execute() {
+    return interceptor.execute(input);
+  }
+
+  /** Failing executions, past the first ones all errors are suppressed by the deduplicator. */
+  @Benchmark
+  public Object executeFailing() {
+    try {
+      return failingInterceptor.execute(input);
+    } catch (RuntimeException e) {
+      return e;
+    }
+  }
+}
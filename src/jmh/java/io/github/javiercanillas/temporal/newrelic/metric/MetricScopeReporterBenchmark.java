@@ -0,0 +1,117 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.uber.m3.util.Duration;
+import io.github.javiercanillas.temporal.newrelic.CountingAgent;
+import io.temporal.serviceclient.MetricsTag;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Measures {@link MetricScopeReporter} report methods, against NewRelic API without an agent
+ * attached and with a {@link CountingAgent}, and how long compiling a metric name takes on name
+ * cache misses.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MetricScopeReporterBenchmark {
+
+  private static final Map<String, String> TAGS =
+      Map.of(
+          MetricsTag.NAMESPACE, "default",
+          MetricsTag.WORKER_TYPE, "WorkflowWorker",
+          MetricsTag.TASK_QUEUE, "orders",
+          MetricsTag.WORKFLOW_TYPE, "OrderWorkflow");
+
+  @Param({"METRICS", "METRICS_AGGREGATED", "EVENTS"})
+  public String mode;
+
+  @Param({"NO_OP", "COUNTING"})
+  public String agent;
+
+  private MetricScopeReporter reporter;
+  private Map<String, String> copiedTags;
+  private Duration interval;
+  private CountingAgent countingAgent;
+
+  @Setup
+  public void setup() {
+    if ("COUNTING".equals(agent)) {
+      countingAgent = CountingAgent.install();
+    }
+    final var options = MetricScopeReporterOptions.builder();
+    if ("METRICS_AGGREGATED".equals(mode)) {
+      options.aggregate(true);
+    } else if ("EVENTS".equals(mode)) {
+      options.reportingMode(ReportingMode.EVENTS);
+    }
+    reporter = new MetricScopeReporter(options.build());
+    // tally hands over its own map instances, equal but not the ones cached
+    copiedTags = new HashMap<>(TAGS);
+    interval = Duration.ofMillis(25);
+  }
+
+  @TearDown
+  public void tearDown() {
+    reporter.flush();
+    if (countingAgent != null) {
+      countingAgent.close();
+    }
+  }
+
+  @Benchmark
+  public void reportCounter() {
+    reporter.reportCounter("workflow_completed", copiedTags, 1L);
+  }
+
+  @Benchmark
+  public void reportGauge() {
+    reporter.reportGauge("sticky_cache_size", copiedTags, 42d);
+  }
+
+  @Benchmark
+  public void reportTimer() {
+    reporter.reportTimer("workflow_endtoend_latency", copiedTags, interval);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Benchmark
+  public void reportHistogramValueSamples() {
+    reporter.reportHistogramValueSamples("poll_size", copiedTags, null, 10d, 20d, 3L);
+  }
+
+  @SuppressWarnings("deprecation")
+  @Benchmark
+  public void reportHistogramDurationSamples() {
+    reporter.reportHistogramDurationSamples(
+        "schedule_to_start_latency",
+        copiedTags,
+        null,
+        Duration.ofMillis(10),
+        Duration.ofMillis(20),
+        3L);
+  }
+
+  /** What used to be {@code buildPathFromTags}: the work done on every name cache miss. */
+  @Benchmark
+  public String formatName() {
+    return MetricNameTemplate.DEFAULT.format("workflow_completed", copiedTags);
+  }
+}
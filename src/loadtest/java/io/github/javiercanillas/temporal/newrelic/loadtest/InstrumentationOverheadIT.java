@@ -0,0 +1,267 @@
+package io.github.javiercanillas.temporal.newrelic.loadtest;
+
+import com.uber.m3.tally.Scope;
+import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
+import io.github.javiercanillas.temporal.newrelic.interceptors.TraceWorkerInterceptor;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporterOptions;
+import io.github.javiercanillas.temporal.newrelic.testing.InMemoryAgent;
+import io.temporal.client.WorkflowClientOptions;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.testing.TestEnvironmentOptions;
+import io.temporal.testing.TestWorkflowEnvironment;
+import io.temporal.worker.WorkerFactoryOptions;
+import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.EnumSource;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.UUID;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+
+/**
+ * Runs every {@link LoadTestScenario} on an in-memory {@link TestWorkflowEnvironment}, plain and
+ * with {@link TraceWorkerInterceptor}, {@link NewRelicDistributedTraceContextPropagator} and a
+ * {@link MetricScopeReporter} scope reporting to an {@link InMemoryAgent}. Fails when the
+ * instrumented runs are past the configured overhead thresholds, and writes every measurement to a
+ * JSON report.
+ * <br>
+ * Every scenario is first run once in both modes, unmeasured, so the JIT compiled both paths.
+ * Then it runs {@link #ROUNDS} rounds, each one in both modes, alternating which goes first, and
+ * the measurements of each mode are pooled, so neither benefits from running on a warmer JVM.
+ * <br>
+ * The {@link InMemoryAgent} is installed once for the whole class, before warming up, since
+ * installing and closing it retransforms classes and throws away the code compiled for them. So
+ * the instrumented runs measure the library plus the agent stand-in, which answers through
+ * reflective proxies and keeps everything in memory: being no cheaper than the real agent, the
+ * thresholds are an upper bound of the overhead of the library alone.
+ */
+class InstrumentationOverheadIT {
+
+  private static final String TASK_QUEUE = "load-test";
+
+  private static final int WORKFLOWS = Integer.getInteger("loadtest.workflows", 200);
+  private static final int CONCURRENCY = Integer.getInteger("loadtest.concurrency", 8);
+  private static final int ROUNDS = Integer.getInteger("loadtest.rounds", 2);
+  private static final double MAX_THROUGHPUT_LOSS = threshold("loadtest.maxThroughputLoss", 0.25);
+  private static final double MAX_LATENCY_OVERHEAD = threshold("loadtest.maxLatencyOverhead", 0.50);
+  private static final double MAX_TAIL_LATENCY_OVERHEAD =
+      threshold("loadtest.maxTailLatencyOverhead", 1.00);
+  private static final double MAX_ALLOCATION_OVERHEAD =
+      threshold("loadtest.maxAllocationOverhead", 0.50);
+  private static final Path REPORT =
+      Path.of(System.getProperty("loadtest.report", "target/load-test-report.json"));
+
+  private static final List<LoadTestResult> RESULTS = new ArrayList<>();
+
+  private static InMemoryAgent agent;
+
+  @BeforeAll
+  static void warmUp() throws Exception {
+    agent = InMemoryAgent.install();
+    for (final var scenario : LoadTestScenario.values()) {
+      measure(scenario, false, Math.max(1, WORKFLOWS / 4));
+      measure(scenario, true, Math.max(1, WORKFLOWS / 4));
+    }
+  }
+
+  @ParameterizedTest
+  @EnumSource(LoadTestScenario.class)
+  void overhead(final LoadTestScenario scenario) throws Exception {
+    Measurement plainRuns = null;
+    Measurement instrumentedRuns = null;
+    for (int round = 0; round < ROUNDS; round++) {
+      final boolean instrumentedFirst = round % 2 == 1;
+      final var first = measure(scenario, instrumentedFirst, WORKFLOWS);
+      final var second = measure(scenario, !instrumentedFirst, WORKFLOWS);
+      final var plainRun = instrumentedFirst ? second : first;
+      final var instrumentedRun = instrumentedFirst ? first : second;
+      plainRuns = plainRuns == null ? plainRun : plainRuns.plus(plainRun);
+      instrumentedRuns =
+          instrumentedRuns == null ? instrumentedRun : instrumentedRuns.plus(instrumentedRun);
+    }
+    final var plain = plainRuns.toResult(scenario, false);
+    final var instrumented = instrumentedRuns.toResult(scenario, true);
+    RESULTS.add(plain);
+    RESULTS.add(instrumented);
+
+    Assertions.assertAll(
+        () -> assertOverhead(
+            "throughput loss", 1 - instrumented.getThroughput() / plain.getThroughput(),
+            MAX_THROUGHPUT_LOSS),
+        () -> assertOverhead(
+            "p50 latency overhead", instrumented.getP50Millis() / plain.getP50Millis() - 1,
+            MAX_LATENCY_OVERHEAD),
+        () -> assertOverhead(
+            "p99 latency overhead", instrumented.getP99Millis() / plain.getP99Millis() - 1,
+            MAX_TAIL_LATENCY_OVERHEAD),
+        () -> assertOverhead(
+            "allocation overhead",
+            instrumented.getAllocatedBytesPerWorkflow() / plain.getAllocatedBytesPerWorkflow() - 1,
+            MAX_ALLOCATION_OVERHEAD));
+  }
+
+  @AfterAll
+  static void uninstallAgent() {
+    agent.close();
+  }
+
+  @AfterAll
+  static void writeReport() throws IOException {
+    Files.createDirectories(REPORT.toAbsolutePath().getParent());
+    final var json =
+        RESULTS.stream().map(LoadTestResult::toJson).collect(Collectors.joining(",\n  ", "[\n  ", "\n]\n"));
+    Files.write(REPORT, json.getBytes(StandardCharsets.UTF_8));
+  }
+
+  private static Measurement measure(
+      final LoadTestScenario scenario, final boolean instrumented, final int workflows)
+      throws Exception {
+    final var workerFactoryOptions = WorkerFactoryOptions.newBuilder();
+    final var clientOptions = WorkflowClientOptions.newBuilder();
+    final var environmentOptions = TestEnvironmentOptions.newBuilder();
+    Scope scope = null;
+    if (instrumented) {
+      workerFactoryOptions.setWorkerInterceptors(new TraceWorkerInterceptor());
+      clientOptions.setContextPropagators(List.of(new NewRelicDistributedTraceContextPropagator()));
+      scope =
+          MetricScopeReporter.getScope(
+              MetricScopeReporterOptions.builder()
+                  .shared(false)
+                  .reportInterval(Duration.ofSeconds(1))
+                  .build());
+      environmentOptions.setMetricsScope(scope);
+    }
+    environmentOptions
+        .setWorkerFactoryOptions(workerFactoryOptions.build())
+        .setWorkflowClientOptions(clientOptions.build());
+
+    final var environment = TestWorkflowEnvironment.newInstance(environmentOptions.build());
+    try {
+      final var worker = environment.newWorker(TASK_QUEUE);
+      worker.registerWorkflowImplementationTypes(
+          LoadTestWorkflows.FanOutWorkflowImpl.class, LoadTestWorkflows.SignalWorkflowImpl.class);
+      worker.registerActivitiesImplementations(new LoadTestWorkflows.EchoActivityImpl());
+      environment.start();
+
+      run(environment, scenario, Math.max(1, workflows / 4));
+      final int transactionsBefore = agent.getTransactions().size();
+      final long allocatedBefore = allocatedBytes();
+      final long start = System.nanoTime();
+      final var latencies = run(environment, scenario, workflows);
+      final long elapsed = System.nanoTime() - start;
+      final long allocated = allocatedBytes() - allocatedBefore;
+
+      if (instrumented) {
+        Assertions.assertTrue(
+            agent.getTransactions().size() > transactionsBefore,
+            "instrumented run recorded no transaction");
+      }
+      return new Measurement(elapsed, latencies, allocated);
+    } finally {
+      environment.close();
+      if (scope != null) {
+        scope.close();
+      }
+    }
+  }
+
+  /** Runs {@code workflows} workflows, {@link #CONCURRENCY} at a time, returning their latencies. */
+  private static long[] run(
+      final TestWorkflowEnvironment environment,
+      final LoadTestScenario scenario,
+      final int workflows)
+      throws Exception {
+    final var client = environment.getWorkflowClient();
+    final var tasks = new ArrayList<Callable<Long>>(workflows);
+    for (int i = 0; i < workflows; i++) {
+      tasks.add(() -> {
+        final var options =
+            WorkflowOptions.newBuilder()
+                .setTaskQueue(TASK_QUEUE)
+                .setWorkflowId(scenario + "-" + UUID.randomUUID())
+                .build();
+        final long start = System.nanoTime();
+        scenario.run(client, options);
+        return System.nanoTime() - start;
+      });
+    }
+    final var executor = Executors.newFixedThreadPool(CONCURRENCY);
+    try {
+      final List<Future<Long>> futures = executor.invokeAll(tasks);
+      final var latencies = new long[workflows];
+      for (int i = 0; i < workflows; i++) {
+        latencies[i] = futures.get(i).get();
+      }
+      return latencies;
+    } finally {
+      executor.shutdown();
+    }
+  }
+
+  /**
+   * Bytes allocated so far by the live threads of the JVM. Threads ending while a scenario runs are
+   * not accounted for, so both runs of a scenario are measured the same, slightly short, way.
+   */
+  private static long allocatedBytes() {
+    final var threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    long total = 0;
+    for (long allocated : threads.getThreadAllocatedBytes(threads.getAllThreadIds())) {
+      if (allocated > 0) {
+        total += allocated;
+      }
+    }
+    return total;
+  }
+
+  private static void assertOverhead(final String what, final double actual, final double max) {
+    Assertions.assertTrue(
+        actual <= max,
+        () -> String.format("%s of %.1f%% is past the %.1f%% threshold", what, actual * 100, max * 100));
+  }
+
+  private static double threshold(final String property, final double defaultValue) {
+    final var value = System.getProperty(property);
+    return value == null ? defaultValue : Double.parseDouble(value);
+  }
+
+  /** Raw measurements of one or more runs of a scenario in the same mode. */
+  private static final class Measurement {
+    private final long elapsedNanos;
+    private final long[] latenciesNanos;
+    private final long allocatedBytes;
+
+    private Measurement(
+        final long elapsedNanos, final long[] latenciesNanos, final long allocatedBytes) {
+      this.elapsedNanos = elapsedNanos;
+      this.latenciesNanos = latenciesNanos;
+      this.allocatedBytes = allocatedBytes;
+    }
+
+    private Measurement plus(final Measurement other) {
+      final var latencies =
+          Arrays.copyOf(latenciesNanos, latenciesNanos.length + other.latenciesNanos.length);
+      System.arraycopy(
+          other.latenciesNanos, 0, latencies, latenciesNanos.length, other.latenciesNanos.length);
+      return new Measurement(
+          elapsedNanos + other.elapsedNanos, latencies, allocatedBytes + other.allocatedBytes);
+    }
+
+    private LoadTestResult toResult(final LoadTestScenario scenario, final boolean instrumented) {
+      return LoadTestResult.of(scenario, instrumented, elapsedNanos, latenciesNanos, allocatedBytes);
+    }
+  }
+}
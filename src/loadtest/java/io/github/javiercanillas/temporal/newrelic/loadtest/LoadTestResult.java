@@ -0,0 +1,59 @@
+package io.github.javiercanillas.temporal.newrelic.loadtest;
+
+import lombok.Value;
+
+import java.util.Arrays;
+import java.util.Locale;
+
+/** What one {@link LoadTestScenario} measured, with instrumentation on or off. */
+@Value
+class LoadTestResult {
+
+  LoadTestScenario scenario;
+  boolean instrumented;
+  int workflows;
+  /** Completed workflows per second. */
+  double throughput;
+  double p50Millis;
+  double p99Millis;
+  /** Bytes allocated by live threads while the scenario ran, per workflow. */
+  double allocatedBytesPerWorkflow;
+
+  static LoadTestResult of(
+      final LoadTestScenario scenario,
+      final boolean instrumented,
+      final long elapsedNanos,
+      final long[] latenciesNanos,
+      final long allocatedBytes) {
+    final var sorted = latenciesNanos.clone();
+    Arrays.sort(sorted);
+    final int workflows = sorted.length;
+    return new LoadTestResult(
+        scenario,
+        instrumented,
+        workflows,
+        workflows * 1e9 / elapsedNanos,
+        percentile(sorted, 0.50) / 1e6,
+        percentile(sorted, 0.99) / 1e6,
+        (double) allocatedBytes / workflows);
+  }
+
+  private static long percentile(final long[] sorted, final double percentile) {
+    final int index = (int) Math.ceil(percentile * sorted.length) - 1;
+    return sorted[Math.max(0, index)];
+  }
+
+  String toJson() {
+    return String.format(
+        Locale.ROOT,
+        "{\"scenario\":\"%s\",\"instrumented\":%b,\"workflows\":%d,\"throughput\":%.3f,"
+            + "\"p50Millis\":%.3f,\"p99Millis\":%.3f,\"allocatedBytesPerWorkflow\":%.1f}",
+        this.scenario,
+        this.instrumented,
+        this.workflows,
+        this.throughput,
+        this.p50Millis,
+        this.p99Millis,
+        this.allocatedBytesPerWorkflow);
+  }
+}
@@ -0,0 +1,56 @@
+package io.github.javiercanillas.temporal.newrelic.loadtest;
+
+import io.temporal.client.WorkflowClient;
+import io.temporal.client.WorkflowOptions;
+import io.temporal.client.WorkflowStub;
+
+/** A workflow shape run by {@link InstrumentationOverheadIT}, one execution at a time. */
+enum LoadTestScenario {
+
+  /** One workflow calling {@value #ACTIVITIES} activities in parallel. */
+  FAN_OUT {
+    @Override
+    void run(final WorkflowClient client, final WorkflowOptions options) {
+      client.newWorkflowStub(LoadTestWorkflows.FanOutWorkflow.class, options).run(ACTIVITIES);
+    }
+  },
+
+  /** One workflow completed by {@value #SIGNALS} signals. */
+  SIGNAL_HEAVY {
+    @Override
+    void run(final WorkflowClient client, final WorkflowOptions options) {
+      final var workflow = client.newWorkflowStub(LoadTestWorkflows.SignalWorkflow.class, options);
+      WorkflowClient.start(workflow::run, SIGNALS);
+      for (int i = 0; i < SIGNALS; i++) {
+        workflow.signal("signal" + i);
+      }
+      WorkflowStub.fromTyped(workflow).getResult(Integer.class);
+    }
+  },
+
+  /** One workflow queried {@value #QUERIES} times before a single signal completes it. */
+  QUERY_HEAVY {
+    @Override
+    void run(final WorkflowClient client, final WorkflowOptions options) {
+      final var workflow = client.newWorkflowStub(LoadTestWorkflows.SignalWorkflow.class, options);
+      WorkflowClient.start(workflow::run, 1);
+      for (int i = 0; i < QUERIES; i++) {
+        workflow.received();
+      }
+      workflow.signal("done");
+      WorkflowStub.fromTyped(workflow).getResult(Integer.class);
+    }
+  };
+
+  static final int ACTIVITIES = 10;
+  static final int SIGNALS = 10;
+  static final int QUERIES = 10;
+
+  /**
+   * Runs one workflow of this scenario and waits for its result.
+   *
+   * @param client a client of the environment under test
+   * @param options options with a unique workflow id and the worker task queue
+   */
+  abstract void run(WorkflowClient client, WorkflowOptions options);
+}
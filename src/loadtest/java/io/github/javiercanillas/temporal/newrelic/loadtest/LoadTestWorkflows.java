@@ -0,0 +1,89 @@
+package io.github.javiercanillas.temporal.newrelic.loadtest;
+
+import io.temporal.activity.ActivityInterface;
+import io.temporal.activity.ActivityOptions;
+import io.temporal.workflow.Async;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.QueryMethod;
+import io.temporal.workflow.SignalMethod;
+import io.temporal.workflow.Workflow;
+import io.temporal.workflow.WorkflowInterface;
+import io.temporal.workflow.WorkflowMethod;
+
+import java.time.Duration;
+import java.util.ArrayList;
+
+/** Workflows and activities run by {@link LoadTestScenario}s. */
+final class LoadTestWorkflows {
+
+  private LoadTestWorkflows() {}
+
+  @ActivityInterface
+  public interface EchoActivity {
+    String echo(String value);
+  }
+
+  public static final class EchoActivityImpl implements EchoActivity {
+    @Override
+    public String echo(final String value) {
+      return value;
+    }
+  }
+
+  /** Calls {@code activities} activities in parallel and waits for all of them. */
+  @WorkflowInterface
+  public interface FanOutWorkflow {
+    @WorkflowMethod
+    int run(int activities);
+  }
+
+  public static final class FanOutWorkflowImpl implements FanOutWorkflow {
+    private final EchoActivity activity =
+        Workflow.newActivityStub(
+            EchoActivity.class,
+            ActivityOptions.newBuilder().setStartToCloseTimeout(Duration.ofSeconds(10)).build());
+
+    @Override
+    public int run(final int activities) {
+      final var results = new ArrayList<Promise<String>>(activities);
+      for (int i = 0; i < activities; i++) {
+        results.add(Async.function(activity::echo, "value" + i));
+      }
+      Promise.allOf(results).get();
+      return results.size();
+    }
+  }
+
+  /** Waits until it receives {@code signals} signals. */
+  @WorkflowInterface
+  public interface SignalWorkflow {
+    @WorkflowMethod
+    int run(int signals);
+
+    @SignalMethod
+    void signal(String value);
+
+    @QueryMethod
+    int received();
+  }
+
+  public static final class SignalWorkflowImpl implements SignalWorkflow {
+    private int received;
+
+    @Override
+    public int run(final int signals) {
+      Workflow.await(() -> this.received >= signals);
+      return this.received;
+    }
+
+    @Override
+    public void signal(final String value) {
+      this.received++;
+    }
+
+    @Override
+    public int received() {
+      return this.received;
+    }
+  }
+}
@@ -0,0 +1,125 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import lombok.NonNull;
+
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A concurrent cache holding at most {@link #getMaxSize()} entries. Lookups that hit the cache are
+ * a single {@link ConcurrentHashMap#get(Object)}, so this is meant for hot paths where the values
+ * are expensive to build but the set of keys is small in steady state.
+ * <br>
+ * When the cache is full, an arbitrary entry is evicted to make room for the new one. Hits, misses
+ * and evictions are counted and can be retrieved at any time.
+ *
+ * @param <K> key type, must have proper {@link Object#equals(Object)} and {@link Object#hashCode()}
+ * @param <V> value type
+ */
+public final class BoundedCache<K, V> {
+
+  private final ConcurrentHashMap<K, V> entries;
+  private final int maxSize;
+  private final LongAdder hits = new LongAdder();
+  private final LongAdder misses = new LongAdder();
+  private final LongAdder evictions = new LongAdder();
+
+  /**
+   * Constructs an empty cache.
+   *
+   * @param maxSize maximum number of entries to keep, must be positive
+   */
+  public BoundedCache(final int maxSize) {
+    if (maxSize <= 0) {
+      throw new IllegalArgumentException("maxSize must be positive");
+    }
+    this.maxSize = maxSize;
+    this.entries = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+  }
+
+  /**
+   * Returns the value associated to the given key, computing it with {@code loader} on a miss.
+   * The loader may be executed more than once for the same key under contention, so it must be
+   * side effect free.
+   *
+   * @param key a non-null key
+   * @param loader function to compute the value when it is not present
+   * @return the cached or freshly computed value
+   */
+  public V get(@NonNull final K key, @NonNull final Function<? super K, ? extends V> loader) {
+    var value = entries.get(key);
+    if (value != null) {
+      hits.increment();
+      return value;
+    }
+    misses.increment();
+    return put(key, loader.apply(key));
+  }
+
+  /**
+   * Returns the value associated to the given key, if present, counting the hit or miss.
+   *
+   * @param key a non-null key
+   * @return the cached value or null
+   */
+  public V getIfPresent(@NonNull final K key) {
+    var value = entries.get(key);
+    if (value != null) {
+      hits.increment();
+    } else {
+      misses.increment();
+    }
+    return value;
+  }
+
+  /**
+   * Associates the given value to the key, evicting an arbitrary entry if the cache is full. If
+   * another value was concurrently associated to the key, that one is kept and returned.
+   *
+   * @param key a non-null key
+   * @param value a non-null value
+   * @return the value associated to the key after this call
+   */
+  public V put(@NonNull final K key, @NonNull final V value) {
+    if (entries.size() >= maxSize) {
+      evictOne();
+    }
+    var previous = entries.putIfAbsent(key, value);
+    return previous != null ? previous : value;
+  }
+
+  private void evictOne() {
+    final Iterator<K> keys = entries.keySet().iterator();
+    if (keys.hasNext()) {
+      entries.remove(keys.next());
+      evictions.increment();
+    }
+  }
+
+  /** Removes all entries without resetting the counters. */
+  public void clear() {
+    entries.clear();
+  }
+
+  public int size() {
+    return entries.size();
+  }
+
+  public int getMaxSize() {
+    return maxSize;
+  }
+
+  public long getHits() {
+    return hits.sum();
+  }
+
+  public long getMisses() {
+    return misses.sum();
+  }
+
+  public long getEvictions() {
+    return evictions.sum();
+  }
+}
@@ -0,0 +1,193 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import com.newrelic.api.agent.NewRelic;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricNames;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides whether an error is worth noticing in full. Errors are fingerprinted by exception class,
+ * top stack frames and the workflow or activity type they were thrown from; only the first {@link
+ * #getMaxErrorsPerWindow()} errors of every fingerprint on each {@link #getWindow()} are reported,
+ * the rest only increment {@value #SUPPRESSED_METRIC}{@code <type>}, with types bounded by {@link
+ * MetricNames#shared()}. That way a failing downstream retried by thousands of activities does not
+ * turn into thousands of identical error reports.
+ * <br>
+ * <br>
+ * Suppressed errors still fail their transaction, they are just not enriched nor noticed again.
+ * Fingerprints are kept on a bounded cache of {@link #getMaxFingerprints()} entries.
+ */
+@Value
+@Builder(toBuilder = true)
+public class ErrorDeduplicator {
+
+  static final String SUPPRESSED_METRIC = MetricNames.BASE + "errors/suppressed/";
+  static final String UNKNOWN_TYPE = MetricNames.UNKNOWN;
+
+  public static final int DEFAULT_MAX_ERRORS_PER_WINDOW = 10;
+  public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(60);
+  public static final int DEFAULT_STACK_FRAMES = 5;
+  public static final int DEFAULT_MAX_FINGERPRINTS = 1_000;
+
+  private static final ErrorDeduplicator DISABLED =
+      builder().maxErrorsPerWindow(Integer.MAX_VALUE).build();
+
+  /** How many errors of each fingerprint are reported on every window. */
+  @Builder.Default int maxErrorsPerWindow = DEFAULT_MAX_ERRORS_PER_WINDOW;
+
+  /** How long errors are counted before their fingerprint can be reported again. */
+  @NonNull @Builder.Default Duration window = DEFAULT_WINDOW;
+
+  /** How many top stack frames are part of the fingerprint. */
+  @Builder.Default int stackFrames = DEFAULT_STACK_FRAMES;
+
+  /** Maximum number of fingerprints remembered. */
+  @Builder.Default int maxFingerprints = DEFAULT_MAX_FINGERPRINTS;
+
+  /** Clock windows are measured with, {@link System#nanoTime()} by default. */
+  @Getter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  @NonNull
+  @Builder.Default
+  LongSupplier nanoTime = System::nanoTime;
+
+  /* built on first use, once maxFingerprints is set, and so not on builder */
+  @Getter(value = AccessLevel.PRIVATE, lazy = true)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final BoundedCache<Fingerprint, Occurrences> fingerprints =
+      new BoundedCache<>(maxFingerprints);
+
+  ErrorDeduplicator(
+      final int maxErrorsPerWindow,
+      @NonNull final Duration window,
+      final int stackFrames,
+      final int maxFingerprints,
+      @NonNull final LongSupplier nanoTime) {
+    if (maxErrorsPerWindow < 0 || stackFrames < 0 || window.isNegative() || window.isZero()) {
+      throw new IllegalArgumentException(
+          "maxErrorsPerWindow and stackFrames can not be negative, window must be positive");
+    }
+    this.maxErrorsPerWindow = maxErrorsPerWindow;
+    this.window = window;
+    this.stackFrames = stackFrames;
+    this.maxFingerprints = maxFingerprints;
+    this.nanoTime = nanoTime;
+  }
+
+  /**
+   * Returns an instance that reports every error.
+   *
+   * @return a disabled deduplicator
+   */
+  public static ErrorDeduplicator disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Records an occurrence of the error and tells whether it should be reported. Suppressed ones
+   * are counted under {@value #SUPPRESSED_METRIC}{@code <type>}.
+   *
+   * @param error the thrown error
+   * @param type workflow or activity type the error was thrown from, {@value #UNKNOWN_TYPE} if null
+   * @return whether the error should be noticed
+   */
+  public boolean shouldReport(@NonNull final Throwable error, final String type) {
+    if (this == DISABLED) {
+      return true;
+    }
+    final var knownType = type == null ? UNKNOWN_TYPE : type;
+    final var fingerprint = new Fingerprint(error, knownType, stackFrames);
+    final var cache = getFingerprints();
+    var occurrences = cache.getIfPresent(fingerprint);
+    if (occurrences == null) {
+      occurrences = cache.put(fingerprint, new Occurrences(knownType, nanoTime.getAsLong()));
+    }
+    if (occurrences.record(nanoTime.getAsLong(), window.toNanos()) <= maxErrorsPerWindow) {
+      return true;
+    }
+    NewRelic.incrementCounter(occurrences.suppressedMetric);
+    return false;
+  }
+
+  private static final class Fingerprint {
+    private final Class<?> errorClass;
+    private final String type;
+    private final StackTraceElement[] frames;
+    private final int hash;
+
+    private Fingerprint(final Throwable error, final String type, final int stackFrames) {
+      this.errorClass = error.getClass();
+      this.type = type;
+      final var stackTrace = error.getStackTrace();
+      this.frames =
+          stackTrace.length <= stackFrames ? stackTrace : Arrays.copyOf(stackTrace, stackFrames);
+      this.hash = 31 * (31 * errorClass.hashCode() + type.hashCode()) + Arrays.hashCode(frames);
+    }
+
+    @Override
+    public boolean equals(final Object o) {
+      if (this == o) {
+        return true;
+      }
+      if (!(o instanceof Fingerprint)) {
+        return false;
+      }
+      final var other = (Fingerprint) o;
+      return hash == other.hash
+          && errorClass == other.errorClass
+          && type.equals(other.type)
+          && Arrays.equals(frames, other.frames);
+    }
+
+    @Override
+    public int hashCode() {
+      return hash;
+    }
+  }
+
+  private static final class Occurrences {
+    private final String suppressedMetric;
+    private final AtomicReference<Window> window;
+
+    private Occurrences(final String type, final long now) {
+      this.suppressedMetric = SUPPRESSED_METRIC + MetricNames.shared().type(type);
+      this.window = new AtomicReference<>(new Window(now));
+    }
+
+    /**
+     * Returns how many times it occurred on the current window, including this one. Windows are
+     * swapped along with their count, so an occurrence is never counted on a window that already
+     * ended nor lost by a reset.
+     */
+    private int record(final long now, final long windowNanos) {
+      var current = window.get();
+      if (now - current.start >= windowNanos) {
+        final var next = new Window(now);
+        current = window.compareAndSet(current, next) ? next : window.get();
+      }
+      return current.count.incrementAndGet();
+    }
+  }
+
+  private static final class Window {
+    private final long start;
+    private final AtomicInteger count = new AtomicInteger();
+
+    private Window(final long start) {
+      this.start = start;
+    }
+  }
+}
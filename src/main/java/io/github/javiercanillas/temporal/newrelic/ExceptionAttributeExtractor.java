@@ -0,0 +1,187 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.ToString;
+import lombok.Value;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+/**
+ * Extracts attributes from an exception by running its getters (see {@link
+ * ExceptionUtils#retrieveAdditionalData(Exception, ExceptionAttributeExtractor)}), keeping the
+ * result within a budget so error enrichment has a predictable cost:
+ *
+ * <ul>
+ *   <li>at most {@link #getMaxAttributes()} attributes are extracted;
+ *   <li>String values are truncated to {@link #getMaxValueLength()} characters;
+ *   <li>getters can be allowed or denied per exception class (a key applies to its subclasses);
+ *   <li>when {@link #isScalarOnly()}, only numbers, booleans, characters, enums and strings are
+ *       kept, otherwise values are converted to (truncated) Strings;
+ *   <li>up to {@link #getMaxCauseDepth()} causes are walked, stopping on cycles, with their
+ *       attributes prefixed by {@code cause<depth>.} plus a {@code cause<depth>.class} attribute.
+ * </ul>
+ *
+ * How to use it:
+ *
+ * <pre>{@code
+ * var extractor = ExceptionAttributeExtractor.builder()
+ *     .maxAttributes(16)
+ *     .deniedGetter(OrderException.class, Set.of("getOrder"))
+ *     .maxCauseDepth(2)
+ *     .build();
+ * }</pre>
+ */
+@Value
+@Builder(toBuilder = true)
+public class ExceptionAttributeExtractor {
+
+  /** NewRelic keeps up to 64 custom attributes per event. */
+  public static final int DEFAULT_MAX_ATTRIBUTES = 64;
+
+  /** NewRelic truncates attribute values to 255 bytes. */
+  public static final int DEFAULT_MAX_VALUE_LENGTH = 255;
+
+  static final String CAUSE_PREFIX = "cause";
+  static final String CLASS_ATTRIBUTE = "class";
+
+  private static final ExceptionAttributeExtractor DEFAULT_INSTANCE = builder().build();
+
+  /** Maximum number of attributes extracted, including those of causes. */
+  @Builder.Default int maxAttributes = DEFAULT_MAX_ATTRIBUTES;
+
+  /** Maximum length of String values, longer ones are truncated. */
+  @Builder.Default int maxValueLength = DEFAULT_MAX_VALUE_LENGTH;
+
+  /**
+   * Getter names run for exceptions of each class, or any of its subclasses. When at least one
+   * entry applies to an exception, other getters are not run.
+   */
+  @Singular Map<Class<? extends Throwable>, Set<String>> allowedGetters;
+
+  /** Getter names never run for exceptions of each class, or any of its subclasses. */
+  @Singular Map<Class<? extends Throwable>, Set<String>> deniedGetters;
+
+  /**
+   * Whether only scalar values (numbers, booleans, characters, enums and strings) are kept, the
+   * default. Otherwise any other value is converted to a String.
+   */
+  @Builder.Default boolean scalarOnly = true;
+
+  /** How many levels of {@link Throwable#getCause()} are walked, none by default. */
+  @Builder.Default int maxCauseDepth = 0;
+
+  /* getters of every class once allow and deny lists were applied, initialized so not on builder */
+  @Getter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final ClassValue<List<ExceptionUtils.Getter>> getters =
+      new ClassValue<>() {
+        @Override
+        protected List<ExceptionUtils.Getter> computeValue(final Class<?> type) {
+          return filterGetters(type);
+        }
+      };
+
+  public static ExceptionAttributeExtractor getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+
+  /**
+   * Extracts attributes from the exception and, if enabled, its causes.
+   *
+   * @param exception a non-null exception
+   * @return a map with getter names, prefixed for causes, as keys and their values
+   */
+  public Map<String, Object> extract(@NonNull final Throwable exception) {
+    final var attributes = new HashMap<String, Object>();
+    extract(exception, "", attributes);
+    if (maxCauseDepth > 0 && exception.getCause() != null) {
+      final Set<Throwable> seen = Collections.newSetFromMap(new IdentityHashMap<>());
+      seen.add(exception);
+      var cause = exception.getCause();
+      for (int depth = 1; depth <= maxCauseDepth && cause != null && seen.add(cause); depth++) {
+        if (attributes.size() >= maxAttributes) {
+          break;
+        }
+        final var prefix = CAUSE_PREFIX + depth + ".";
+        attributes.put(prefix + CLASS_ATTRIBUTE, cause.getClass().getName());
+        extract(cause, prefix, attributes);
+        cause = cause.getCause();
+      }
+    }
+    return attributes;
+  }
+
+  private void extract(
+      final Throwable exception, final String prefix, final Map<String, Object> attributes) {
+    for (final var getter : getters.get(exception.getClass())) {
+      if (attributes.size() >= maxAttributes) {
+        return;
+      }
+      final var value = coerce(getter.silentInvoke(exception));
+      if (value != null) {
+        attributes.put(prefix.isEmpty() ? getter.getName() : prefix + getter.getName(), value);
+      }
+    }
+  }
+
+  private Object coerce(final Object value) {
+    if (value == null || value instanceof Number || value instanceof Boolean) {
+      return value;
+    }
+    if (value instanceof CharSequence || value instanceof Character) {
+      return truncate(value.toString());
+    }
+    if (value instanceof Enum) {
+      return truncate(((Enum<?>) value).name());
+    }
+    return scalarOnly ? null : truncate(String.valueOf(value));
+  }
+
+  private String truncate(final String value) {
+    if (value.length() <= maxValueLength) {
+      return value;
+    }
+    var end = maxValueLength;
+    // do not split surrogate pairs
+    if (end > 0 && Character.isHighSurrogate(value.charAt(end - 1))) {
+      end--;
+    }
+    return value.substring(0, end);
+  }
+
+  private List<ExceptionUtils.Getter> filterGetters(final Class<?> type) {
+    final var allowed = namesFor(allowedGetters, type);
+    final var denied = namesFor(deniedGetters, type);
+    return ExceptionUtils.getters(type).stream()
+        .filter(g -> allowed == null || allowed.contains(g.getName()))
+        .filter(g -> denied == null || !denied.contains(g.getName()))
+        .collect(Collectors.toUnmodifiableList());
+  }
+
+  private static Set<String> namesFor(
+      final Map<Class<? extends Throwable>, Set<String>> getters, final Class<?> type) {
+    Set<String> names = null;
+    for (final var entry : getters.entrySet()) {
+      if (entry.getKey().isAssignableFrom(type)) {
+        if (names == null) {
+          names = new HashSet<>();
+        }
+        names.addAll(entry.getValue());
+      }
+    }
+    return names;
+  }
+}
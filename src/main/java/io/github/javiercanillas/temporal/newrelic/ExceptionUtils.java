@@ -3,13 +3,17 @@ package io.github.javiercanillas.temporal.newrelic;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
+import java.lang.reflect.Modifier;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
-import java.util.Optional;
 import java.util.Set;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
@@ -20,6 +24,18 @@ public final class ExceptionUtils {
   private static final Set<String> SKIPPED_METHODS =
       streamOfGetters(Throwable.class).map(Method::getName).collect(Collectors.toSet());
 
+  private static final MethodHandles.Lookup LOOKUP = MethodHandles.lookup();
+  private static final MethodType GETTER_TYPE = MethodType.methodType(Object.class, Object.class);
+
+  /* getters of every exception class, resolved the first time an instance of it is seen */
+  private static final ClassValue<List<Getter>> GETTERS =
+      new ClassValue<>() {
+        @Override
+        protected List<Getter> computeValue(final Class<?> type) {
+          return resolveGetters(type);
+        }
+      };
+
   /* None should create an instance of this */
   private ExceptionUtils() {}
 
@@ -37,42 +53,113 @@ public final class ExceptionUtils {
    * methods on {@link Throwable} are skipped to avoid returning a huge map full of stack-traces.
    * <b>Note: Be aware that this method <u>executes</u> those methods, so there shouldn't be logic
    * on them</b>
+   * <br>
+   * Getters of each exception class are looked up only once, and kept as {@link MethodHandle}s, so
+   * only the getters themselves are executed on every call. Every value is returned as is; use
+   * {@link #retrieveAdditionalData(Exception, ExceptionAttributeExtractor)} to keep them within a
+   * budget.
    *
    * @param exception a non-null exception instance
    * @return a map containing method name as key, and the value returned after method execution
    */
   public static Map<String, Object> retrieveAdditionalData(@NonNull final Exception exception) {
     try {
-      final var methods = new HashMap<String, Method>();
-      Class<?> clazz = exception.getClass();
-      do {
-        streamOfGetters(clazz)
-            // if already set (because it was overridden) lets keep the fresh one
-            .filter(m -> !methods.containsKey(m.getName()))
-            // avoid skipped methods
-            .filter(m -> !SKIPPED_METHODS.contains(m.getName()))
-            .forEach(m -> methods.put(m.getName(), m));
-        clazz = clazz.getSuperclass();
-      } while (clazz != null && clazz != Object.class);
-
-      return methods.entrySet().stream()
-          .map(m -> Map.entry(m.getKey(), silentInvoke(m.getValue(), exception)))
-          .filter(entry -> entry.getValue().isPresent())
-          .map(entry -> Map.entry(entry.getKey(), entry.getValue().orElse(null)))
-          .collect(Collectors.toMap(Map.Entry::getKey, Map.Entry::getValue));
+      final var getters = GETTERS.get(exception.getClass());
+      final var data = new HashMap<String, Object>(getters.size() * 4 / 3 + 1);
+      for (final var getter : getters) {
+        final var value = getter.silentInvoke(exception);
+        if (value != null) {
+          data.put(getter.getName(), value);
+        }
+      }
+      return data;
     } catch (RuntimeException e) {
       log.debug("Couldn't extract additional data from {}", exception, e);
       return Collections.emptyMap();
     }
   }
 
-  private static Optional<Object> silentInvoke(
-      @NonNull final Method method, @NonNull final Object target) {
+  /**
+   * Same as {@link #retrieveAdditionalData(Exception)}, within the budget of the given extractor
+   * (see {@link ExceptionAttributeExtractor}).
+   *
+   * @param exception a non-null exception instance
+   * @param extractor a non-null extractor
+   * @return a map containing method name as key, and the value returned after method execution
+   */
+  public static Map<String, Object> retrieveAdditionalData(
+      @NonNull final Exception exception, @NonNull final ExceptionAttributeExtractor extractor) {
     try {
-      return Optional.ofNullable(method.invoke(target));
-    } catch (InvocationTargetException | IllegalAccessException e) {
-      log.debug("Method invocation failure for {} over {}", method.getName(), target, e);
-      return Optional.empty();
+      return extractor.extract(exception);
+    } catch (RuntimeException e) {
+      log.debug("Couldn't extract additional data from {}", exception, e);
+      return Collections.emptyMap();
+    }
+  }
+
+  /**
+   * Returns the getters executed for instances of the given class, resolving them if this is the
+   * first time the class is seen.
+   *
+   * @param clazz exception class
+   * @return resolved getters
+   */
+  static List<Getter> getters(final Class<?> clazz) {
+    return GETTERS.get(clazz);
+  }
+
+  private static List<Getter> resolveGetters(final Class<?> type) {
+    final var methods = new LinkedHashMap<String, Method>();
+    Class<?> clazz = type;
+    do {
+      streamOfGetters(clazz)
+          // if already set (because it was overridden) lets keep the fresh one
+          .filter(m -> !methods.containsKey(m.getName()))
+          // avoid skipped methods
+          .filter(m -> !SKIPPED_METHODS.contains(m.getName()))
+          .forEach(m -> methods.put(m.getName(), m));
+      clazz = clazz.getSuperclass();
+    } while (clazz != null && clazz != Object.class);
+
+    final var getters = new Getter[methods.size()];
+    var count = 0;
+    for (final var method : methods.values()) {
+      try {
+        var handle = LOOKUP.unreflect(method);
+        if (Modifier.isStatic(method.getModifiers())) {
+          handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        getters[count++] = new Getter(method.getName(), handle.asType(GETTER_TYPE));
+      } catch (IllegalAccessException e) {
+        log.debug("Method {} of {} is not accessible, skipping it", method.getName(), type, e);
+      }
+    }
+    return List.of(Arrays.copyOf(getters, count));
+  }
+
+  /** A getter bound to a {@link MethodHandle} taking the exception and returning an Object. */
+  static final class Getter {
+    private final String name;
+    private final MethodHandle handle;
+
+    private Getter(final String name, final MethodHandle handle) {
+      this.name = name;
+      this.handle = handle;
+    }
+
+    String getName() {
+      return name;
+    }
+
+    @SuppressWarnings("java:S1181")
+    Object silentInvoke(final Object target) {
+      try {
+        return handle.invokeExact(target);
+      } catch (Throwable e) {
+        // as reflective invocations did, whatever the getter throws only skips its value
+        log.debug("Method invocation failure for {} over {}", name, target, e);
+        return null;
+      }
     }
   }
 }
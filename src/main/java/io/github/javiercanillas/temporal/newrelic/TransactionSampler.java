@@ -0,0 +1,202 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import com.newrelic.api.agent.NewRelic;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricNames;
+import lombok.AccessLevel;
+import lombok.Builder;
+import lombok.EqualsAndHashCode;
+import lombok.Getter;
+import lombok.NonNull;
+import lombok.Singular;
+import lombok.ToString;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Decides which workflow and activity executions are traced as transactions. Every execution of a
+ * type is sampled with its rate ({@link #getTypeRates()}, or {@link #getRate()} for types without
+ * one) and, when {@link #getTransactionsPerWindow()} is set, the rate is further lowered to keep
+ * each type close to that many transactions on each {@link #getWindow()}, based on how many
+ * executions the type had on the previous one.
+ * <br>
+ * <br>
+ * Executions not sampled are not traced: they are only recorded on a {@value #UNSAMPLED_METRIC}
+ * {@code <type>} response time metric, and errors they throw counted under {@value
+ * #UNSAMPLED_METRIC}{@code <type>/errors}, so totals stay accurate. Types on those names are bounded
+ * by {@link MetricNames#shared()}, and types are kept on a bounded cache of {@link #getMaxTypes()}
+ * entries.
+ */
+@Value
+@Builder(toBuilder = true)
+public class TransactionSampler {
+
+  static final String UNSAMPLED_METRIC = MetricNames.BASE + "unsampled/";
+  static final String UNKNOWN_TYPE = MetricNames.UNKNOWN;
+
+  public static final double DEFAULT_RATE = 1d;
+  public static final int DEFAULT_TRANSACTIONS_PER_WINDOW = 0;
+  public static final Duration DEFAULT_WINDOW = Duration.ofSeconds(60);
+  public static final int DEFAULT_MAX_TYPES = 1_000;
+
+  private static final TransactionSampler DISABLED = builder().build();
+
+  /** Rate types without one of their own are sampled with, every execution by default. */
+  @Builder.Default double rate = DEFAULT_RATE;
+
+  /** Rates of specific types, between 0 and 1. */
+  @Singular Map<String, Double> typeRates;
+
+  /** Target of transactions per type on each window, 0 (default) if there is none. */
+  @Builder.Default int transactionsPerWindow = DEFAULT_TRANSACTIONS_PER_WINDOW;
+
+  /** How long executions are counted to adapt the rate to {@link #getTransactionsPerWindow()}. */
+  @NonNull @Builder.Default Duration window = DEFAULT_WINDOW;
+
+  /** Maximum number of types remembered. */
+  @Builder.Default int maxTypes = DEFAULT_MAX_TYPES;
+
+  /** Clock windows are measured with, {@link System#nanoTime()} by default. */
+  @Getter(AccessLevel.NONE)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  @NonNull
+  @Builder.Default
+  LongSupplier nanoTime = System::nanoTime;
+
+  /* built on first use, once maxTypes is set, and so not on builder */
+  @Getter(value = AccessLevel.PRIVATE, lazy = true)
+  @EqualsAndHashCode.Exclude
+  @ToString.Exclude
+  private final BoundedCache<String, TypeSampling> types = new BoundedCache<>(maxTypes);
+
+  TransactionSampler(
+      final double rate,
+      @NonNull final Map<String, Double> typeRates,
+      final int transactionsPerWindow,
+      @NonNull final Duration window,
+      final int maxTypes,
+      @NonNull final LongSupplier nanoTime) {
+    if (!isRate(rate) || !typeRates.values().stream().allMatch(TransactionSampler::isRate)) {
+      throw new IllegalArgumentException("rates must be between 0 and 1");
+    }
+    if (transactionsPerWindow < 0 || window.isNegative() || window.isZero()) {
+      throw new IllegalArgumentException(
+          "transactionsPerWindow can not be negative, window must be positive");
+    }
+    this.rate = rate;
+    this.typeRates = Map.copyOf(typeRates);
+    this.transactionsPerWindow = transactionsPerWindow;
+    this.window = window;
+    this.maxTypes = maxTypes;
+    this.nanoTime = nanoTime;
+  }
+
+  private static boolean isRate(final double rate) {
+    return rate >= 0d && rate <= 1d;
+  }
+
+  /**
+   * Returns an instance that samples every execution.
+   *
+   * @return a disabled sampler
+   */
+  public static TransactionSampler disabled() {
+    return DISABLED;
+  }
+
+  /**
+   * Records an execution of the type and tells whether it should be traced.
+   *
+   * @param type workflow or activity type, {@value #UNKNOWN_TYPE} if null
+   * @return whether the execution should be traced
+   */
+  public boolean sample(final String type) {
+    if (this == DISABLED) {
+      return true;
+    }
+    return typeSampling(type).sample(nanoTime.getAsLong());
+  }
+
+  /**
+   * Records an execution that was not sampled.
+   *
+   * @param type workflow or activity type, {@value #UNKNOWN_TYPE} if null
+   * @param durationNanos how long the execution took
+   * @param failed whether the execution threw an error
+   */
+  public void recordUnsampled(final String type, final long durationNanos, final boolean failed) {
+    final var sampling = typeSampling(type);
+    NewRelic.recordResponseTimeMetric(
+        sampling.unsampledMetric, TimeUnit.NANOSECONDS.toMillis(durationNanos));
+    if (failed) {
+      NewRelic.incrementCounter(sampling.errorsMetric);
+    }
+  }
+
+  private TypeSampling typeSampling(final String type) {
+    final var knownType = type == null ? UNKNOWN_TYPE : type;
+    return getTypes()
+        .get(
+            knownType,
+            key ->
+                new TypeSampling(
+                    key, typeRates.getOrDefault(key, rate), transactionsPerWindow,
+                    window.toNanos(), nanoTime.getAsLong()));
+  }
+
+  private static final class TypeSampling {
+    private final String unsampledMetric;
+    private final String errorsMetric;
+    private final double rate;
+    private final int target;
+    private final long windowNanos;
+    private final AtomicLong windowStart;
+    private final AtomicInteger executions = new AtomicInteger();
+    private final AtomicInteger sampled = new AtomicInteger();
+    private volatile double adjustment = 1d;
+
+    private TypeSampling(
+        final String type,
+        final double rate,
+        final int target,
+        final long windowNanos,
+        final long now) {
+      this.unsampledMetric = UNSAMPLED_METRIC + MetricNames.shared().type(type);
+      this.errorsMetric = this.unsampledMetric + "/errors";
+      this.rate = rate;
+      this.target = target;
+      this.windowNanos = windowNanos;
+      this.windowStart = new AtomicLong(now);
+    }
+
+    private boolean sample(final long now) {
+      if (target == 0) {
+        return draw(rate);
+      }
+      final var start = windowStart.get();
+      if (now - start >= windowNanos && windowStart.compareAndSet(start, now)) {
+        final var candidates = executions.getAndSet(0) * rate;
+        sampled.set(0);
+        adjustment = candidates <= target ? 1d : target / candidates;
+      }
+      executions.incrementAndGet();
+      if (sampled.get() >= target || !draw(rate * adjustment)) {
+        return false;
+      }
+      sampled.incrementAndGet();
+      return true;
+    }
+
+    private static boolean draw(final double probability) {
+      return probability >= 1d
+          || (probability > 0d && ThreadLocalRandom.current().nextDouble() < probability);
+    }
+  }
+}
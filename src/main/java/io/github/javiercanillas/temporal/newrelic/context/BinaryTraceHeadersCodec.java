@@ -0,0 +1,134 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import com.google.protobuf.ByteString;
+import io.temporal.api.common.v1.Payload;
+import io.temporal.common.converter.EncodingKeys;
+import lombok.extern.slf4j.Slf4j;
+
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Encodes distributed tracing headers as {@value #ENCODING} payloads: a version byte followed by
+ * entries made of a header id byte, a two bytes (big endian) value length and the UTF-8 value.
+ * Only {@link #HEADERS} are encoded, in that order, as long as they fit in the size budget; a
+ * header with several values is written once per value.
+ */
+@Slf4j
+final class BinaryTraceHeadersCodec {
+
+  static final String ENCODING = "binary/newrelic-dt";
+  static final ByteString ENCODING_BYTES = ByteString.copyFromUtf8(ENCODING);
+  static final byte VERSION = 1;
+  /* in order of importance, position is the id written on the payload */
+  static final List<String> HEADERS = List.of("traceparent", "newrelic", "tracestate");
+
+  private static final int ENTRY_OVERHEAD = 3;
+  private static final int MAX_VALUE_LENGTH = 0xFFFF;
+
+  private final int maxPayloadSize;
+
+  BinaryTraceHeadersCodec(final int maxPayloadSize) {
+    if (maxPayloadSize < 1) {
+      throw new IllegalArgumentException("maxPayloadSize must be positive: " + maxPayloadSize);
+    }
+    this.maxPayloadSize = maxPayloadSize;
+  }
+
+  static boolean isEncoded(final Payload payload) {
+    return ENCODING_BYTES.equals(payload.getMetadataMap().get(EncodingKeys.METADATA_ENCODING_KEY));
+  }
+
+  /**
+   * Encodes the known headers that fit in the budget.
+   *
+   * @param headers headers as inserted by NewRelic agent
+   * @return the payload, or null if there was nothing to encode
+   */
+  Payload encode(final Map<String, List<String>> headers) {
+    final var values = new byte[HEADERS.size()][][];
+    var size = 1;
+    for (final var entry : headers.entrySet()) {
+      final var id = HEADERS.indexOf(entry.getKey().toLowerCase(Locale.ROOT));
+      if (id >= 0 && entry.getValue() != null) {
+        values[id] = entry.getValue().stream()
+            .map(value -> value.getBytes(StandardCharsets.UTF_8))
+            .toArray(byte[][]::new);
+      }
+    }
+    for (int id = 0; id < values.length; id++) {
+      if (values[id] == null) {
+        continue;
+      }
+      for (int i = 0; i < values[id].length; i++) {
+        final var length = values[id][i].length;
+        if (length > MAX_VALUE_LENGTH || size + ENTRY_OVERHEAD + length > maxPayloadSize) {
+          log.debug("{} header does not fit in {} bytes, leaving it out", HEADERS.get(id), maxPayloadSize);
+          values[id][i] = null;
+        } else {
+          size += ENTRY_OVERHEAD + length;
+        }
+      }
+    }
+    if (size == 1) {
+      return null;
+    }
+    final var data = new byte[size];
+    data[0] = VERSION;
+    var position = 1;
+    for (int id = 0; id < values.length; id++) {
+      if (values[id] == null) {
+        continue;
+      }
+      for (final var value : values[id]) {
+        if (value != null) {
+          data[position++] = (byte) id;
+          data[position++] = (byte) (value.length >>> 8);
+          data[position++] = (byte) value.length;
+          System.arraycopy(value, 0, data, position, value.length);
+          position += value.length;
+        }
+      }
+    }
+    return Payload.newBuilder()
+        .putMetadata(EncodingKeys.METADATA_ENCODING_KEY, ENCODING_BYTES)
+        .setData(ByteString.copyFrom(data))
+        .build();
+  }
+
+  /**
+   * Decodes a payload built by {@link #encode(Map)}.
+   *
+   * @param payload encoded payload
+   * @return decoded headers
+   * @throws IllegalArgumentException if the payload is malformed or has an unknown version
+   */
+  static Map<String, List<String>> decode(final Payload payload) {
+    final var data = payload.getData();
+    if (data.isEmpty() || data.byteAt(0) != VERSION) {
+      throw new IllegalArgumentException("Unsupported " + ENCODING + " payload version");
+    }
+    final var headers = new HashMap<String, List<String>>(4);
+    var position = 1;
+    while (position < data.size()) {
+      if (position + ENTRY_OVERHEAD > data.size()) {
+        throw new IllegalArgumentException("Truncated " + ENCODING + " payload");
+      }
+      final var id = data.byteAt(position) & 0xFF;
+      final var length = (data.byteAt(position + 1) & 0xFF) << 8 | data.byteAt(position + 2) & 0xFF;
+      position += ENTRY_OVERHEAD;
+      if (id >= HEADERS.size() || position + length > data.size()) {
+        throw new IllegalArgumentException("Malformed " + ENCODING + " payload");
+      }
+      headers
+          .computeIfAbsent(HEADERS.get(id), k -> new ArrayList<>(1))
+          .add(data.substring(position, position + length).toStringUtf8());
+      position += length;
+    }
+    return headers;
+  }
+}
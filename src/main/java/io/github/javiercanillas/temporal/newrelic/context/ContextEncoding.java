@@ -0,0 +1,13 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+/** How {@link NewRelicDistributedTraceContextPropagator} encodes trace headers on Temporal headers. */
+public enum ContextEncoding {
+  /** The whole headers map as JSON, through the default {@code DataConverter}. */
+  JSON,
+  /**
+   * Length-prefixed binary values of the known distributed tracing headers ({@code newrelic},
+   * {@code traceparent} and {@code tracestate}) within a size budget. Only workers running a
+   * version able to decode it should receive it.
+   */
+  BINARY
+}
@@ -1,25 +1,33 @@
 package io.github.javiercanillas.temporal.newrelic.context;
 
+import com.google.protobuf.ByteString;
 import com.newrelic.api.agent.Agent;
 import com.newrelic.api.agent.ConcurrentHashMapHeaders;
 import com.newrelic.api.agent.HeaderType;
 import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.Transaction;
 import com.newrelic.api.agent.TransportType;
+import io.github.javiercanillas.temporal.newrelic.BoundedCache;
 import io.temporal.api.common.v1.Payload;
 import io.temporal.common.context.ContextPropagator;
 import io.temporal.common.converter.DataConverter;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Objects;
 import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Collectors;
 
 /**
  * Propagates Distributed Transaction tracing within Temporal workflow and activities. It uses a {@link
- * ThreadLocal} to hold the context map with the information. In order to mitigate the scenario
- * where this information can applied to wrong execution, after the first {@link
- * #getCurrentContext()} the ThreadLocal content value is removed. <br>
+ * TraceContextCarrier} to hold the context map with the information until the execution reads it. In order
+ * to mitigate the scenario where this information can applied to wrong execution, after the first {@link
+ * #getCurrentContext()} the context is removed, and it is always dropped once the execution scope is closed. <br>
  * As far as the use of this class, the context is set once and then get only once.
  * <br>
  * How to use it:<br>
@@ -31,12 +39,46 @@ import java.util.Optional;
  * }
  * </pre>
  * You want to avoid crashing in case of an error, losing NewRelic distributed tracing data, you can compose
- * it with {@link SilentWrapperContextPropagator}.
+ * it with {@link SilentWrapperContextPropagator}. Headers are encoded as JSON unless configured
+ * otherwise through {@link NewRelicDistributedTraceContextPropagatorOptions}, but both encodings
+ * are always decoded.
  */
 @Slf4j
 public class NewRelicDistributedTraceContextPropagator implements ContextPropagator {
 
-    private static final ThreadLocal<Object> CURRENT_CONTEXT = new ThreadLocal<>();
+    static final String CACHE_HIT_METRIC = "Custom/temporalio/propagator/deserialization/hit";
+    static final String CACHE_MISS_METRIC = "Custom/temporalio/propagator/deserialization/miss";
+
+    private final BinaryTraceHeadersCodec binaryCodec;
+    /* keyed by payload data only, as JSON and binary encodings never produce the same bytes */
+    private final BoundedCache<ByteString, Map<String, List<String>>> deserializationCache;
+    private final long cacheStatsReportIntervalNanos;
+    private final AtomicLong cacheStatsReportedAt = new AtomicLong(System.nanoTime());
+    /* guarded by the CAS on cacheStatsReportedAt, only its winner reports */
+    private long reportedHits;
+    private long reportedMisses;
+
+    private final boolean reuseOutboundHeaders;
+    private final long maxHeadersAgeNanos;
+    private final int maxHeadersUses;
+
+    public NewRelicDistributedTraceContextPropagator() {
+        this(NewRelicDistributedTraceContextPropagatorOptions.getDefaultInstance());
+    }
+
+    public NewRelicDistributedTraceContextPropagator(
+            @NonNull final NewRelicDistributedTraceContextPropagatorOptions options) {
+        this.binaryCodec = options.getEncoding() == ContextEncoding.BINARY
+                ? new BinaryTraceHeadersCodec(options.getMaxPayloadSize())
+                : null;
+        this.deserializationCache = options.getDeserializationCacheSize() > 0
+                ? new BoundedCache<>(options.getDeserializationCacheSize())
+                : null;
+        this.cacheStatsReportIntervalNanos = options.getCacheStatsReportInterval().toNanos();
+        this.reuseOutboundHeaders = options.isReuseOutboundHeaders();
+        this.maxHeadersAgeNanos = options.getOutboundHeadersMaxAge().toNanos();
+        this.maxHeadersUses = options.getOutboundHeadersMaxUses();
+    }
 
     /**
      * {@inheritDoc}
@@ -51,33 +93,57 @@ public class NewRelicDistributedTraceContextPropagator implements ContextPropaga
      */
     @Override
     public Object getCurrentContext() {
-        var obj = CURRENT_CONTEXT.get();
+        Object obj = TraceContextCarrier.take();
         if (obj == null) {
-            try {
-                var optTransaction = Optional.ofNullable(NewRelic.getAgent()).map(Agent::getTransaction);
-                if (optTransaction.isPresent()) {
-                    obj =
-                            optTransaction
-                                    .map(
-                                            t -> {
-                                                var headers = ConcurrentHashMapHeaders.build(HeaderType.MESSAGE);
-                                                t.insertDistributedTraceHeaders(headers);
-                                                return headers;
-                                            })
-                                    .map(ConcurrentHashMapHeaders::getMapCopy)
-                                    .orElse(Collections.emptyMap());
-                } else {
-                    log.trace("No NewRelic transaction exists to get distributed tracing data.");
-                    obj = Collections.emptyMap();
-                }
-            } finally {
-                CURRENT_CONTEXT.remove();
+            var agent = NewRelic.getAgent();
+            var optTransaction = Optional.ofNullable(agent).map(Agent::getTransaction);
+            if (optTransaction.isPresent()) {
+                obj =
+                        optTransaction
+                                .map(t -> reuseOutboundHeaders
+                                        ? reuseOrInsertHeaders(agent, t)
+                                        : insertHeaders(t))
+                                .orElse(Collections.emptyMap());
+            } else {
+                log.trace("No NewRelic transaction exists to get distributed tracing data.");
+                obj = Collections.emptyMap();
             }
         }
         log.trace("getCurrentContext: {}", obj);
         return obj;
     }
 
+    private static Map<String, List<String>> insertHeaders(final Transaction transaction) {
+        var headers = ConcurrentHashMapHeaders.build(HeaderType.MESSAGE);
+        transaction.insertDistributedTraceHeaders(headers);
+        return headers.getMapCopy();
+    }
+
+    /*
+     * Headers are kept per thread (where workflow code runs) until the execution scope is closed,
+     * never outside of one, and handed over again while the trace does not change and the refresh
+     * policy allows it. They are not keyed by span: every outbound call traced as a segment is a new
+     * span, so they would never be reused. Reused headers name as parent the span they were built
+     * on, an earlier one of the same transaction.
+     */
+    private Map<String, List<String>> reuseOrInsertHeaders(final Agent agent, final Transaction transaction) {
+        final var metadata = agent.getTraceMetadata();
+        final var traceId = metadata != null ? metadata.getTraceId() : null;
+        if (traceId == null || traceId.isEmpty()) {
+            return insertHeaders(transaction);
+        }
+        final var now = System.nanoTime();
+        var reusable = (OutboundHeaders) TraceContextCarrier.getOutbound();
+        if (reusable != null
+                && reusable.isReusable(traceId, now, maxHeadersAgeNanos, maxHeadersUses)) {
+            reusable.uses++;
+            return reusable.headers;
+        }
+        reusable = new OutboundHeaders(traceId, immutableCopy(insertHeaders(transaction)), now);
+        TraceContextCarrier.setOutbound(reusable);
+        return reusable.headers;
+    }
+
     /**
      * {@inheritDoc}
      */
@@ -86,14 +152,18 @@ public class NewRelicDistributedTraceContextPropagator implements ContextPropaga
         log.trace("setCurrentContext: {}", context);
         @SuppressWarnings("unchecked") final var contextMap = (Map<String, List<String>>) context;
         if (contextMap != null) {
-            CURRENT_CONTEXT.set(contextMap);
+            TraceContextCarrier.offer(contextMap);
             acceptDistributedTraceHeaders(contextMap);
         }
     }
 
-    @SuppressWarnings("unchecked")
+    /**
+     * Accepts the inbound distributed tracing headers of the execution running on the current thread, if any, on
+     * the current transaction. Call it once the transaction started, within the execution {@link
+     * TraceContextCarrier} scope.
+     */
     public static void acceptDistributedTraceHeaders() {
-        Optional.ofNullable((Map<String, List<String>>) CURRENT_CONTEXT.get())
+        Optional.ofNullable(TraceContextCarrier.peek())
                 .ifPresentOrElse(
                         NewRelicDistributedTraceContextPropagator::acceptDistributedTraceHeaders,
                         () -> log.trace("No Distributed trace header to accept"));
@@ -112,8 +182,13 @@ public class NewRelicDistributedTraceContextPropagator implements ContextPropaga
      * {@inheritDoc}
      */
     @Override
+    @SuppressWarnings("unchecked")
     public Map<String, Payload> serializeContext(final Object context) {
-        if (context != null) {
+        if (context != null && binaryCodec != null) {
+            return Optional.ofNullable(binaryCodec.encode((Map<String, List<String>>) context))
+                    .map(payload -> Map.of(this.getName(), payload))
+                    .orElse(Collections.emptyMap());
+        } else if (context != null) {
             return Map.of(
                     this.getName(), DataConverter.getDefaultInstance().toPayload(context).orElseThrow());
         } else {
@@ -123,15 +198,103 @@ public class NewRelicDistributedTraceContextPropagator implements ContextPropaga
 
     /**
      * {@inheritDoc}
+     * <br>
+     * Decoded headers are immutable and, unless disabled, cached by payload content.
      */
     @Override
     public Object deserializeContext(final Map<String, Payload> context) {
 
         return Optional.ofNullable(context)
                 .map(c -> c.get(this.getName()))
-                .map(
-                        payload ->
-                                DataConverter.getDefaultInstance().fromPayload(payload, Map.class, Map.class))
+                .map(this::deserializeHeaders)
                 .orElse(null);
     }
+
+    private Map<String, List<String>> deserializeHeaders(final Payload payload) {
+        if (deserializationCache == null) {
+            return decode(payload);
+        }
+        reportCacheStats();
+        var headers = deserializationCache.getIfPresent(payload.getData());
+        if (headers != null) {
+            return headers;
+        }
+        return deserializationCache.put(payload.getData(), decode(payload));
+    }
+
+    /*
+     * Hits and misses are counted by the cache, and only their increments since the previous report
+     * are sent, once per interval, so decoding a payload does not call NewRelic.
+     */
+    private void reportCacheStats() {
+        final var reportedAt = cacheStatsReportedAt.get();
+        final var now = System.nanoTime();
+        if (now - reportedAt < cacheStatsReportIntervalNanos
+                || !cacheStatsReportedAt.compareAndSet(reportedAt, now)) {
+            return;
+        }
+        synchronized (cacheStatsReportedAt) {
+            final var hits = deserializationCache.getHits();
+            final var misses = deserializationCache.getMisses();
+            if (hits > reportedHits) {
+                NewRelic.incrementCounter(CACHE_HIT_METRIC, (int) Math.min(hits - reportedHits, Integer.MAX_VALUE));
+            }
+            if (misses > reportedMisses) {
+                NewRelic.incrementCounter(CACHE_MISS_METRIC, (int) Math.min(misses - reportedMisses, Integer.MAX_VALUE));
+            }
+            reportedHits = hits;
+            reportedMisses = misses;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, List<String>> decode(final Payload payload) {
+        final Map<String, List<String>> headers = BinaryTraceHeadersCodec.isEncoded(payload)
+                ? BinaryTraceHeadersCodec.decode(payload)
+                : DataConverter.getDefaultInstance().fromPayload(payload, Map.class, Map.class);
+        return immutableCopy(headers);
+    }
+
+    private static Map<String, List<String>> immutableCopy(final Map<String, List<String>> headers) {
+        final var copy = new HashMap<String, List<String>>(headers.size() * 2);
+        headers.forEach((key, values) -> {
+            if (key != null && values != null) {
+                copy.put(key, values.stream()
+                        .filter(Objects::nonNull)
+                        .collect(Collectors.toUnmodifiableList()));
+            }
+        });
+        return Collections.unmodifiableMap(copy);
+    }
+
+    /**
+     * Gives access to the decoded payloads cache, mostly to check its hit, miss and eviction
+     * counters.
+     *
+     * @return the cache holding decoded payloads, or null if disabled
+     */
+    BoundedCache<ByteString, Map<String, List<String>>> getDeserializationCache() {
+        return deserializationCache;
+    }
+
+    private static final class OutboundHeaders {
+        private final String traceId;
+        private final Map<String, List<String>> headers;
+        private final long createdAt;
+        private int uses = 1;
+
+        private OutboundHeaders(final String traceId, final Map<String, List<String>> headers,
+                                final long createdAt) {
+            this.traceId = traceId;
+            this.headers = headers;
+            this.createdAt = createdAt;
+        }
+
+        private boolean isReusable(final String traceId, final long now, final long maxAgeNanos,
+                                   final int maxUses) {
+            return uses < maxUses
+                    && now - createdAt < maxAgeNanos
+                    && this.traceId.equals(traceId);
+        }
+    }
 }
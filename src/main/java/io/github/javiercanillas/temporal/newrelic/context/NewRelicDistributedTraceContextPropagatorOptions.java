@@ -0,0 +1,69 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Duration;
+
+/**
+ * Options used to build a {@link NewRelicDistributedTraceContextPropagator}. How to use it:
+ *
+ * <pre>{@code
+ * var options = NewRelicDistributedTraceContextPropagatorOptions.builder()
+ *     .encoding(ContextEncoding.BINARY)
+ *     .build();
+ * var propagator = new NewRelicDistributedTraceContextPropagator(options);
+ * }</pre>
+ */
+@Value
+@Builder(toBuilder = true)
+public class NewRelicDistributedTraceContextPropagatorOptions {
+
+  private static final NewRelicDistributedTraceContextPropagatorOptions DEFAULT_INSTANCE =
+      builder().build();
+
+  /**
+   * How headers are encoded, JSON by default. Both encodings are always decoded, so switch to
+   * {@link ContextEncoding#BINARY} once every worker runs a version supporting it.
+   */
+  @NonNull @Builder.Default ContextEncoding encoding = ContextEncoding.JSON;
+
+  /**
+   * Maximum size, in bytes, of {@link ContextEncoding#BINARY} payloads. Headers that do not fit
+   * are left out, in order of importance: {@code traceparent}, {@code newrelic} and {@code
+   * tracestate}.
+   */
+  @Builder.Default int maxPayloadSize = 1_024;
+
+  /**
+   * Maximum number of decoded payloads to keep, so the same headers read again (e.g. while
+   * replaying a workflow history) are not decoded every time. 0 disables the cache.
+   */
+  @Builder.Default int deserializationCacheSize = 1_000;
+
+  /**
+   * How often the hits and misses of the decoded payloads cache are reported, at most. They are
+   * counted by the cache itself and reported, as the increment since the previous report, by the
+   * first payload decoded once the interval elapsed.
+   */
+  @NonNull @Builder.Default Duration cacheStatsReportInterval = Duration.ofSeconds(60);
+
+  /**
+   * Whether outbound headers are built once per trace and thread, then reused for the following
+   * calls of the same trace (e.g. a workflow scheduling many activities) until {@link
+   * #outboundHeadersMaxAge} or {@link #outboundHeadersMaxUses} is reached. Reused headers name as
+   * parent the span they were built on, not the one of each call. Disabled by default.
+   */
+  @Builder.Default boolean reuseOutboundHeaders = false;
+
+  /** How long reused outbound headers are valid for. */
+  @NonNull @Builder.Default Duration outboundHeadersMaxAge = Duration.ofSeconds(5);
+
+  /** How many times outbound headers are handed over before building them again. */
+  @Builder.Default int outboundHeadersMaxUses = 1_000;
+
+  public static NewRelicDistributedTraceContextPropagatorOptions getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+}
@@ -0,0 +1,142 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import com.newrelic.api.agent.NewRelic;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Carries distributed tracing state from {@link NewRelicDistributedTraceContextPropagator} to the
+ * workflow or activity execution running on the current thread. Temporal hands the inbound context
+ * over on the thread that is about to run the execution, so that is the only place it can be kept
+ * until the execution starts; from then on it belongs to the execution {@link Scope}.
+ * <br>
+ * Every execution opens a scope on entry and closes it on exit, which drops any state left on the
+ * thread, so pooled and virtual threads do not retain it after the execution is over. Scopes opened
+ * while another one is open on the same thread (like a query answered from within an execution)
+ * leave that state to the outer one. Outbound state is only kept within a scope.
+ * <br>
+ * A context set on a thread that still holds one nobody read, with no scope open, means an
+ * execution did not open nor close its scope: it is counted under {@value #LEAKED_METRIC}.
+ * <br>
+ * How to use it:
+ * <pre>{@code
+ * try (var scope = TraceContextCarrier.open()) {
+ *   NewRelicDistributedTraceContextPropagator.acceptDistributedTraceHeaders();
+ *   ...
+ * }
+ * }</pre>
+ */
+public final class TraceContextCarrier {
+
+  static final String LEAKED_METRIC = "Custom/temporalio/propagator/context/leaked";
+
+  private static final ThreadLocal<Slot> SLOT = new ThreadLocal<>();
+
+  private TraceContextCarrier() {}
+
+  /**
+   * Opens the scope of the execution about to run on the current thread.
+   *
+   * @return a scope to close once the execution is over
+   */
+  public static Scope open() {
+    final var slot = slot();
+    slot.scopes++;
+    return new Scope(Thread.currentThread(), slot);
+  }
+
+  /** Keeps the inbound context until it is read, counting the previous one if it was not. */
+  static void offer(final Map<String, List<String>> context) {
+    final var slot = slot();
+    if (slot.inbound != null && slot.scopes == 0) {
+      NewRelic.incrementCounter(LEAKED_METRIC);
+    }
+    slot.inbound = context;
+  }
+
+  /** Returns the inbound context, if any, keeping it. */
+  static Map<String, List<String>> peek() {
+    final var slot = SLOT.get();
+    return slot != null ? slot.inbound : null;
+  }
+
+  /** Returns and forgets the inbound context, if any. */
+  static Map<String, List<String>> take() {
+    final var slot = SLOT.get();
+    if (slot == null) {
+      return null;
+    }
+    final var inbound = slot.inbound;
+    slot.inbound = null;
+    if (slot.scopes == 0) {
+      SLOT.remove();
+    }
+    return inbound;
+  }
+
+  /** Returns the outbound state kept for the current scope, if any. */
+  static Object getOutbound() {
+    final var slot = SLOT.get();
+    return slot != null ? slot.outbound : null;
+  }
+
+  /**
+   * Keeps outbound state until the current scope is closed. Without a scope open on the thread
+   * nothing is kept, as nothing would drop it.
+   *
+   * @return whether it was kept
+   */
+  static boolean setOutbound(final Object outbound) {
+    final var slot = SLOT.get();
+    if (slot == null || slot.scopes == 0) {
+      return false;
+    }
+    slot.outbound = outbound;
+    return true;
+  }
+
+  private static Slot slot() {
+    var slot = SLOT.get();
+    if (slot == null) {
+      slot = new Slot();
+      SLOT.set(slot);
+    }
+    return slot;
+  }
+
+  private static final class Slot {
+    private Map<String, List<String>> inbound;
+    private Object outbound;
+    /* scopes open on the thread, only the outermost one drops the slot */
+    private int scopes;
+  }
+
+  /** Scope of a workflow or activity execution, see {@link TraceContextCarrier}. */
+  public static final class Scope implements AutoCloseable {
+
+    private final Thread owner;
+    private final Slot slot;
+    private boolean closed;
+
+    private Scope(final Thread owner, final Slot slot) {
+      this.owner = owner;
+      this.slot = slot;
+    }
+
+    /**
+     * Drops any state left on the thread that opened the scope, unless it is nested in another
+     * one, which keeps it.
+     */
+    @Override
+    public void close() {
+      if (this.closed || Thread.currentThread() != this.owner || SLOT.get() != this.slot) {
+        return;
+      }
+      this.closed = true;
+      if (--this.slot.scopes == 0) {
+        SLOT.remove();
+      }
+    }
+  }
+}
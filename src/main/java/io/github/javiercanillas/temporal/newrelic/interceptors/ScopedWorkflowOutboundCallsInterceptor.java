@@ -0,0 +1,31 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import io.github.javiercanillas.temporal.newrelic.context.TraceContextCarrier;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptorBase;
+import io.temporal.workflow.Async;
+
+/**
+ * This class extends {@link WorkflowOutboundCallsInterceptorBase} to open a {@link
+ * TraceContextCarrier} scope around every thread a workflow starts (e.g. through {@link Async}).
+ * Temporal propagates the context of the parent to each of them, so, as for executions, the scope
+ * drops it once the thread is done instead of leaving it on a pooled thread.
+ */
+final class ScopedWorkflowOutboundCallsInterceptor extends WorkflowOutboundCallsInterceptorBase {
+
+  ScopedWorkflowOutboundCallsInterceptor(final WorkflowOutboundCallsInterceptor next) {
+    super(next);
+  }
+
+  @Override
+  public Object newChildThread(final Runnable runnable, final boolean detached, final String name) {
+    return super.newChildThread(
+        () -> {
+          try (var scope = TraceContextCarrier.open()) {
+            runnable.run();
+          }
+        },
+        detached,
+        name);
+  }
+}
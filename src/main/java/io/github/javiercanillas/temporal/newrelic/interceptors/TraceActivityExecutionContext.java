@@ -0,0 +1,64 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import com.newrelic.api.agent.NewRelic;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricNames;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.client.ActivityCanceledException;
+import io.temporal.common.interceptors.ActivityExecutionContextBase;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * This class extends {@link ActivityExecutionContextBase} to count and time heartbeats of an
+ * activity, as <b>{@value #HEARTBEAT_METRIC}{activityType}</b> counters and
+ * <b>{@value #HEARTBEAT_METRIC}{activityType}/duration</b> response time metrics.
+ * <br>
+ * The first heartbeat telling the activity was cancelled starts a clock, stopped by {@link
+ * #exit()}, recorded as <b>{@value #CANCELLATION_METRIC}{activityType}</b> response time metric.
+ * <br>
+ * Activity types are bounded by {@link MetricNames#shared()}, so past its limit they are named
+ * {@value MetricNames#OTHER}. Heartbeats may be sent from any thread, so this class is thread safe.
+ */
+final class TraceActivityExecutionContext extends ActivityExecutionContextBase {
+
+  static final String HEARTBEAT_METRIC = MetricNames.BASE + "activity/heartbeat/";
+  static final String CANCELLATION_METRIC = MetricNames.BASE + "activity/cancellation/";
+
+  private final String heartbeatMetric;
+  private final String heartbeatDurationMetric;
+  private final String cancellationMetric;
+  private final AtomicLong cancelledAt = new AtomicLong();
+
+  TraceActivityExecutionContext(final ActivityExecutionContext next) {
+    super(next);
+    final var type = MetricNames.shared().type(next.getInfo().getActivityType());
+    this.heartbeatMetric = HEARTBEAT_METRIC + type;
+    this.heartbeatDurationMetric = this.heartbeatMetric + "/duration";
+    this.cancellationMetric = CANCELLATION_METRIC + type;
+  }
+
+  @Override
+  public <V> void heartbeat(final V details) {
+    NewRelic.incrementCounter(this.heartbeatMetric);
+    final var start = System.nanoTime();
+    try {
+      super.heartbeat(details);
+    } catch (ActivityCanceledException e) {
+      this.cancelledAt.compareAndSet(0, System.nanoTime());
+      throw e;
+    } finally {
+      NewRelic.recordResponseTimeMetric(
+          this.heartbeatDurationMetric, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+    }
+  }
+
+  /** Records the time since cancellation was noticed, if it was. To call once the activity exits. */
+  void exit() {
+    final var cancelled = this.cancelledAt.get();
+    if (cancelled != 0) {
+      NewRelic.recordResponseTimeMetric(
+          this.cancellationMetric, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - cancelled));
+    }
+  }
+}
@@ -2,8 +2,13 @@ package io.github.javiercanillas.temporal.newrelic.interceptors;
 
 import com.newrelic.api.agent.NewRelic;
 import com.newrelic.api.agent.Trace;
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.ExceptionAttributeExtractor;
 import io.github.javiercanillas.temporal.newrelic.ExceptionUtils;
+import io.github.javiercanillas.temporal.newrelic.TransactionSampler;
 import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
+import io.github.javiercanillas.temporal.newrelic.context.TraceContextCarrier;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricNames;
 import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.activity.ActivityInfo;
 import io.temporal.common.interceptors.ActivityInboundCallsInterceptor;
@@ -12,31 +17,85 @@ import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
 import java.util.Objects;
+import java.util.concurrent.TimeUnit;
 
 /**
  * This class extends {@link ActivityInboundCallsInterceptorBase} and implements {@link ActivityInboundCallsInterceptor}
  * to enable NewRelic Transaction recording.
+ * <br>
+ * When {@link TraceWorkerInterceptorOptions#isTraceHeartbeats()} is enabled, the activity execution context is
+ * wrapped with a {@link TraceActivityExecutionContext}, so heartbeats are recorded.
+ * <br>
+ * Executions not sampled by {@link TraceWorkerInterceptorOptions#getTransactionSampler()} ignore their transaction.
+ * <br>
+ * When {@link TraceWorkerInterceptorOptions#isLightweightLocalActivities()} is enabled, local activities start no
+ * transaction and are only recorded as <b>{@value #LOCAL_ACTIVITY_METRIC}{activityType}</b> response time metrics.
+ * <br>
+ * Every execution records, from the server timestamps of its {@link ActivityInfo} and so without reading any clock,
+ * <b>{@value #SCHEDULE_TO_START_METRIC}{taskQueue}/{activityType}</b> (from the scheduling of the current attempt to
+ * its start, that is the time spent in the task queue) and
+ * <b>{@value #SCHEDULE_TO_ATTEMPT_START_METRIC}{taskQueue}/{activityType}</b> (from the scheduling of the first attempt
+ * to the start of the current one, so retries and their backoff included) response time metrics, and counts retried
+ * attempts as <b>{@value #RETRY_METRIC}{taskQueue}/{activityType}</b>. They are recorded within the transaction of the
+ * execution, once it is named. Sampled transactions also get them, with the attempt number and task queue, as
+ * attributes. Task queues and activity types are bounded by {@link MetricNames}, so neither can explode the number of
+ * metrics.
  */
 @Slf4j
 public final class TraceActivityInboundCallsInterceptor
     extends ActivityInboundCallsInterceptorBase {
 
+  static final String LOCAL_ACTIVITY_METRIC = MetricNames.BASE + "localActivity/";
+  static final String SCHEDULE_TO_START_METRIC = MetricNames.BASE + "activity/scheduleToStart/";
+  static final String SCHEDULE_TO_ATTEMPT_START_METRIC = MetricNames.BASE + "activity/scheduleToAttemptStart/";
+  static final String RETRY_METRIC = MetricNames.BASE + "activity/retry/";
+  static final String ATTEMPT_ATTRIBUTE = "temporal.activity.attempt";
+  static final String TASK_QUEUE_ATTRIBUTE = "temporal.activity.taskQueue";
+  static final String SCHEDULE_TO_START_ATTRIBUTE = "temporal.activity.scheduleToStartMillis";
+  static final String SCHEDULE_TO_ATTEMPT_START_ATTRIBUTE = "temporal.activity.scheduleToAttemptStartMillis";
+
   private final String transactionCategory;
+  private final ExceptionAttributeExtractor exceptionAttributeExtractor;
+  private final ErrorDeduplicator errorDeduplicator;
+  private final boolean traceHeartbeats;
+  private final TransactionSampler transactionSampler;
+  private final boolean lightweightLocalActivities;
+  private final MetricNames metricNames = MetricNames.shared();
   private ActivityInfo activityInfo;
+  private TraceActivityExecutionContext tracedContext;
+  private long scheduleToStartMillis = -1;
+  private long scheduleToAttemptStartMillis = -1;
 
   @Override
   public void init(final ActivityExecutionContext context) {
     this.activityInfo = Objects.requireNonNull(context.getInfo());
-    super.init(context);
+    if (this.traceHeartbeats) {
+      this.tracedContext = new TraceActivityExecutionContext(context);
+      super.init(this.tracedContext);
+    } else {
+      super.init(context);
+    }
   }
 
   public TraceActivityInboundCallsInterceptor(@NonNull final String transactionCategory, final ActivityInboundCallsInterceptor next) {
+    this(TraceWorkerInterceptorOptions.getDefaultInstance().toBuilder()
+        .activityTransactionCategory(transactionCategory)
+        .build(), next);
+  }
+
+  public TraceActivityInboundCallsInterceptor(@NonNull final TraceWorkerInterceptorOptions options, final ActivityInboundCallsInterceptor next) {
     super(next);
-    this.transactionCategory = transactionCategory;
+    this.transactionCategory = options.getActivityTransactionCategory();
+    this.exceptionAttributeExtractor = options.getExceptionAttributeExtractor();
+    this.errorDeduplicator = options.getErrorDeduplicator();
+    this.traceHeartbeats = options.isTraceHeartbeats();
+    this.transactionSampler = options.getTransactionSampler();
+    this.lightweightLocalActivities = options.isLightweightLocalActivities();
   }
 
   /**
-   * Intercepts a call to the main activity entry method to start a transaction.
+   * Intercepts a call to the main activity entry method to start a transaction, unless it is a local activity
+   * recorded as a metric only.
    * <br><br>
    * Transaction is categorized as {@link #transactionCategory} and its name is {@link ActivityInfo#getActivityType()}
    * Exceptions thrown during this executions will be notify to Newrelic as unexpected errors and will attempt
@@ -44,16 +103,116 @@ public final class TraceActivityInboundCallsInterceptor
    *
    * @return result of the activity execution.
    */
-  @Trace(dispatcher = true)
   @Override
   public ActivityOutput execute(final ActivityInput input) {
-    NewRelicDistributedTraceContextPropagator.acceptDistributedTraceHeaders();
-    NewRelic.setTransactionName(this.transactionCategory, this.activityInfo.getActivityType());
+    if (this.lightweightLocalActivities && this.activityInfo.isLocal()) {
+      return localExecute(input);
+    }
+    return tracedExecute(input);
+  }
+
+  @Trace(dispatcher = true)
+  private ActivityOutput tracedExecute(final ActivityInput input) {
+    try (var scope = TraceContextCarrier.open()) {
+      if (!this.transactionSampler.sample(this.activityInfo.getActivityType())) {
+        return unsampledExecute(input);
+      }
+      NewRelicDistributedTraceContextPropagator.acceptDistributedTraceHeaders();
+      NewRelic.setTransactionName(this.transactionCategory, this.activityInfo.getActivityType());
+      recordLatency();
+      addLatencyAttributes();
+      try {
+        return super.execute(input);
+      } catch (Exception e) {
+        noticeError(e, this.activityInfo.getActivityType());
+        throw e;
+      } finally {
+        if (this.tracedContext != null) {
+          this.tracedContext.exit();
+        }
+      }
+    }
+  }
+
+  /**
+   * Runs a local activity without any transaction, only recording its duration. Errors are noticed as usual.
+   */
+  private ActivityOutput localExecute(final ActivityInput input) {
+    try (var scope = TraceContextCarrier.open()) {
+      final var type = this.activityInfo.getActivityType();
+      recordLatency();
+      final var start = System.nanoTime();
+      try {
+        return super.execute(input);
+      } catch (Exception e) {
+        noticeError(e, type);
+        throw e;
+      } finally {
+        NewRelic.recordResponseTimeMetric(
+            LOCAL_ACTIVITY_METRIC + this.metricNames.type(type), TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      }
+    }
+  }
+
+  /**
+   * Runs an execution not sampled, ignoring its transaction and only recording it on the sampler.
+   */
+  private ActivityOutput unsampledExecute(final ActivityInput input) {
+    NewRelic.getAgent().getTransaction().ignore();
+    recordLatency();
+    final var start = System.nanoTime();
+    var failed = true;
     try {
-      return super.execute(input);
-    } catch (Exception e) {
-      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e), false);
-      throw e;
+      final var output = super.execute(input);
+      failed = false;
+      return output;
+    } finally {
+      this.transactionSampler.recordUnsampled(
+          this.activityInfo.getActivityType(), System.nanoTime() - start, failed);
+      if (this.tracedContext != null) {
+        this.tracedContext.exit();
+      }
+    }
+  }
+
+  /**
+   * Records schedule-to-start and schedule-to-attempt-start latencies of this attempt. Both only use timestamps set by the server
+   * (see {@link ActivityInfo#getStartedTimestamp()}), so nothing is recorded when any of them is missing.
+   */
+  private void recordLatency() {
+    final var started = this.activityInfo.getStartedTimestamp();
+    final var scheduled = this.activityInfo.getScheduledTimestamp();
+    if (started <= 0 || scheduled <= 0) {
+      return;
+    }
+    final var attemptScheduled = this.activityInfo.getCurrentAttemptScheduledTimestamp();
+    this.scheduleToStartMillis = Math.max(0, started - (attemptScheduled > 0 ? attemptScheduled : scheduled));
+    this.scheduleToAttemptStartMillis = Math.max(0, started - scheduled);
+    final var suffix = this.metricNames.taskQueue(this.activityInfo.getActivityTaskQueue())
+        + "/" + this.metricNames.type(this.activityInfo.getActivityType());
+    NewRelic.recordResponseTimeMetric(SCHEDULE_TO_START_METRIC + suffix, this.scheduleToStartMillis);
+    NewRelic.recordResponseTimeMetric(SCHEDULE_TO_ATTEMPT_START_METRIC + suffix, this.scheduleToAttemptStartMillis);
+    if (this.activityInfo.getAttempt() > 1) {
+      NewRelic.incrementCounter(RETRY_METRIC + suffix);
+    }
+  }
+
+  private void addLatencyAttributes() {
+    NewRelic.addCustomParameter(ATTEMPT_ATTRIBUTE, this.activityInfo.getAttempt());
+    NewRelic.addCustomParameter(TASK_QUEUE_ATTRIBUTE, this.activityInfo.getActivityTaskQueue());
+    if (this.scheduleToStartMillis >= 0) {
+      NewRelic.addCustomParameter(SCHEDULE_TO_START_ATTRIBUTE, this.scheduleToStartMillis);
+      NewRelic.addCustomParameter(SCHEDULE_TO_ATTEMPT_START_ATTRIBUTE, this.scheduleToAttemptStartMillis);
+    }
+  }
+
+  /**
+   * Notices the exception as an unexpected error, unless it is one of a storm of identical errors
+   * (see {@link ErrorDeduplicator}).
+   */
+  private void noticeError(final Exception e, final String type) {
+    if (this.errorDeduplicator.shouldReport(e, type)) {
+      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e, this.exceptionAttributeExtractor), false);
     }
   }
 }
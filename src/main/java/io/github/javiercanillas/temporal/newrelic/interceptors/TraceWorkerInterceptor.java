@@ -20,15 +20,14 @@ import lombok.NonNull;
  */
 public class TraceWorkerInterceptor implements WorkerInterceptor {
 
-  private final String workflowTransactionCategory;
-  private final String activityTransactionCategory;
+  private final TraceWorkerInterceptorOptions options;
 
   /**
    * Constructs a {@link TraceWorkerInterceptor} using "Workflow" as transaction category for Workflow transactions and
    * "Activity" for Activity transactions.
    */
   public TraceWorkerInterceptor() {
-    this("Workflow", "Activity");
+    this(TraceWorkerInterceptorOptions.getDefaultInstance());
   }
 
   /**
@@ -37,8 +36,18 @@ public class TraceWorkerInterceptor implements WorkerInterceptor {
    * @param activityTransactionCategory a non-null String
    */
   public TraceWorkerInterceptor(@NonNull final String workflowTransactionCategory, @NonNull final String activityTransactionCategory) {
-    this.workflowTransactionCategory = workflowTransactionCategory;
-    this.activityTransactionCategory = activityTransactionCategory;
+    this(TraceWorkerInterceptorOptions.getDefaultInstance().toBuilder()
+        .workflowTransactionCategory(workflowTransactionCategory)
+        .activityTransactionCategory(activityTransactionCategory)
+        .build());
+  }
+
+  /**
+   * Constructs a {@link TraceWorkerInterceptor} using the given options.
+   * @param options a non-null options instance
+   */
+  public TraceWorkerInterceptor(@NonNull final TraceWorkerInterceptorOptions options) {
+    this.options = options;
   }
 
 
@@ -48,7 +57,7 @@ public class TraceWorkerInterceptor implements WorkerInterceptor {
   @Override
   public WorkflowInboundCallsInterceptor interceptWorkflow(
       final WorkflowInboundCallsInterceptor next) {
-    return new TraceWorkflowInboundCallsInterceptor(this.workflowTransactionCategory, next);
+    return new TraceWorkflowInboundCallsInterceptor(this.options, next);
   }
 
   /**
@@ -57,6 +66,6 @@ public class TraceWorkerInterceptor implements WorkerInterceptor {
   @Override
   public ActivityInboundCallsInterceptor interceptActivity(
       final ActivityInboundCallsInterceptor next) {
-    return new TraceActivityInboundCallsInterceptor(this.activityTransactionCategory, next);
+    return new TraceActivityInboundCallsInterceptor(this.options, next);
   }
 }
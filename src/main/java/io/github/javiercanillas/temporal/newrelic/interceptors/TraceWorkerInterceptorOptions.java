@@ -0,0 +1,81 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.ExceptionAttributeExtractor;
+import io.github.javiercanillas.temporal.newrelic.TransactionSampler;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+/**
+ * Options used to build a {@link TraceWorkerInterceptor}. How to use it:
+ *
+ * <pre>{@code
+ * var options = TraceWorkerInterceptorOptions.builder()
+ *     .exceptionAttributeExtractor(ExceptionAttributeExtractor.builder().maxCauseDepth(2).build())
+ *     .build();
+ * var interceptor = new TraceWorkerInterceptor(options);
+ * }</pre>
+ */
+@Value
+@Builder(toBuilder = true)
+public class TraceWorkerInterceptorOptions {
+
+  private static final TraceWorkerInterceptorOptions DEFAULT_INSTANCE = builder().build();
+
+  /** Category of workflow transactions. */
+  @NonNull @Builder.Default String workflowTransactionCategory = "Workflow";
+
+  /** Category of activity transactions. */
+  @NonNull @Builder.Default String activityTransactionCategory = "Activity";
+
+  /** How attributes are extracted from exceptions noticed as errors. */
+  @NonNull @Builder.Default
+  ExceptionAttributeExtractor exceptionAttributeExtractor =
+      ExceptionAttributeExtractor.getDefaultInstance();
+
+  /**
+   * Decides which errors are noticed, by default all of them. Set one built with {@link
+   * ErrorDeduplicator#builder()} to notice only the first identical errors of each workflow or
+   * activity type per window; it is shared by every interceptor built with these options.
+   */
+  @NonNull @Builder.Default
+  ErrorDeduplicator errorDeduplicator = ErrorDeduplicator.disabled();
+
+  /**
+   * Whether workflow executions and signals being replayed start transactions and notice errors
+   * as live ones do. Disabled by default, so replays are only counted as metrics. Replay is
+   * checked when the call starts: one that goes on live after replaying stays without transaction
+   * and is counted as resumed, though its errors and outbound calls are still recorded.
+   */
+  @Builder.Default boolean traceReplays = false;
+
+  /**
+   * Whether activities, local activities, child workflows, timers and external signals called from
+   * workflows are timed as segments and metrics. Disabled by default.
+   */
+  @Builder.Default boolean traceOutboundCalls = false;
+
+  /**
+   * Whether activity heartbeats are counted and timed, along with the time activities take to exit
+   * once cancelled (see {@link TraceActivityExecutionContext}). Disabled by default.
+   */
+  @Builder.Default boolean traceHeartbeats = false;
+
+  /**
+   * Decides which workflow executions, signals and activity executions are traced as transactions,
+   * by default all of them. Executions not sampled are only counted as metrics.
+   */
+  @NonNull @Builder.Default
+  TransactionSampler transactionSampler = TransactionSampler.disabled();
+
+  /**
+   * Whether local activities are only recorded as metrics, instead of transactions of their own.
+   * Disabled by default.
+   */
+  @Builder.Default boolean lightweightLocalActivities = false;
+
+  public static TraceWorkerInterceptorOptions getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+}
@@ -2,32 +2,83 @@ package io.github.javiercanillas.temporal.newrelic.interceptors;
 
 import com.newrelic.api.agent.NewRelic;
 import com.newrelic.api.agent.Trace;
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.ExceptionAttributeExtractor;
 import io.github.javiercanillas.temporal.newrelic.ExceptionUtils;
+import io.github.javiercanillas.temporal.newrelic.TransactionSampler;
 import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
+import io.github.javiercanillas.temporal.newrelic.context.TraceContextCarrier;
 import io.temporal.activity.ActivityInfo;
 import io.temporal.common.interceptors.WorkflowInboundCallsInterceptor;
 import io.temporal.common.interceptors.WorkflowInboundCallsInterceptorBase;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
 import io.temporal.workflow.Workflow;
 import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
 /**
  * This class extends {@link WorkflowInboundCallsInterceptorBase} and implements {@link WorkflowInboundCallsInterceptor}
  * to enable NewRelic Transaction recording.
+ * <br>
+ * Workflow executions and signals being replayed (see {@link Workflow#isReplaying()}), for example after being evicted
+ * from the worker cache, do not start transactions nor notice errors. They are only counted as
+ * <b>{@value #REPLAY_METRIC}{workflowType}/{call}</b> metrics, along with a <b>/duration</b> one when the call ends
+ * before the replay does. See {@link TraceWorkerInterceptorOptions#isTraceReplays()}.
+ * <br>
+ * Whether a call is replayed is decided when it starts, as its transaction can not be started halfway. A call that
+ * catches up with the history and goes on live stays without transaction, noticing only its errors; it is counted on
+ * a <b>/resumed</b> metric instead of <b>/duration</b>. Outbound calls check {@link Workflow#isReplaying()} on their
+ * own, so its segments and metrics are still recorded once live.
+ * <br>
+ * Executions and signals not sampled by {@link TraceWorkerInterceptorOptions#getTransactionSampler()} ignore their
+ * transaction.
  */
 @Slf4j
 public final class TraceWorkflowInboundCallsInterceptor
     extends WorkflowInboundCallsInterceptorBase {
   
+  static final String REPLAY_METRIC = "Custom/temporalio/replay/";
+
   private final String transactionCategory;
+  private final ExceptionAttributeExtractor exceptionAttributeExtractor;
+  private final ErrorDeduplicator errorDeduplicator;
+  private final boolean traceReplays;
+  private final boolean traceOutboundCalls;
+  private final TransactionSampler transactionSampler;
 
   public TraceWorkflowInboundCallsInterceptor(@NonNull final String transactionCategory, final WorkflowInboundCallsInterceptor next) {
+    this(TraceWorkerInterceptorOptions.getDefaultInstance().toBuilder()
+        .workflowTransactionCategory(transactionCategory)
+        .build(), next);
+  }
+
+  public TraceWorkflowInboundCallsInterceptor(@NonNull final TraceWorkerInterceptorOptions options, final WorkflowInboundCallsInterceptor next) {
     super(next);
-    this.transactionCategory = transactionCategory;
+    this.transactionCategory = options.getWorkflowTransactionCategory();
+    this.exceptionAttributeExtractor = options.getExceptionAttributeExtractor();
+    this.errorDeduplicator = options.getErrorDeduplicator();
+    this.traceReplays = options.isTraceReplays();
+    this.traceOutboundCalls = options.isTraceOutboundCalls();
+    this.transactionSampler = options.getTransactionSampler();
+  }
+
+  /**
+   * Wraps outbound calls with {@link ScopedWorkflowOutboundCallsInterceptor}, so threads started by the workflow
+   * drop their context once done, and with {@link TraceWorkflowOutboundCallsInterceptor} to time them, when enabled.
+   */
+  @Override
+  public void init(final WorkflowOutboundCallsInterceptor outboundCalls) {
+    final WorkflowOutboundCallsInterceptor interceptor = this.traceOutboundCalls
+        ? new TraceWorkflowOutboundCallsInterceptor(outboundCalls, this.traceReplays)
+        : outboundCalls;
+    super.init(new ScopedWorkflowOutboundCallsInterceptor(interceptor));
   }
 
   /**
-   * Intercepts a call to the main workflow entry method to start a transaction.
+   * Intercepts a call to the main workflow entry method to start a transaction, unless it is being replayed.
    * <br><br>
    * The transaction will be categorized as {@link #transactionCategory} and its name will be <b>{@link ActivityInfo#getWorkflowType()}/execute</b>
    * <br>
@@ -35,22 +86,35 @@ public final class TraceWorkflowInboundCallsInterceptor
    * to retrieve additional information from the exception by using {@link ExceptionUtils#retrieveAdditionalData(Exception)}
    * @return result of the workflow execution.
    */
-  @Trace(dispatcher = true)
   @Override
   public WorkflowOutput execute(final WorkflowInput input) {
-    NewRelicDistributedTraceContextPropagator.acceptDistributedTraceHeaders();
+    try (var scope = TraceContextCarrier.open()) {
+      if (!this.traceReplays && Workflow.isReplaying()) {
+        return replay("execute", () -> super.execute(input));
+      }
+      return tracedExecute(input);
+    }
+  }
+
+  @Trace(dispatcher = true)
+  private WorkflowOutput tracedExecute(final WorkflowInput input) {
     var info = Workflow.getInfo();
+    if (!this.transactionSampler.sample(info.getWorkflowType())) {
+      return unsampled(info.getWorkflowType(), () -> super.execute(input));
+    }
+    NewRelicDistributedTraceContextPropagator.acceptDistributedTraceHeaders();
     NewRelic.setTransactionName(this.transactionCategory, info.getWorkflowType() + "/execute");
     try {
       return super.execute(input);
     } catch (Exception e) {
-      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e), false);
+      noticeError(e, info.getWorkflowType());
       throw e;
     }
   }
 
   /**
-   * Intercepts a signal delivery action to a workflow execution to start a transaction.
+   * Intercepts a signal delivery action to a workflow execution to start a transaction, unless it is being
+   * replayed.
    * <br><br>
    * The transaction will be categorized as {@link #transactionCategory} and its name will be
    * <b>{@link ActivityInfo#getWorkflowType()}/signal/{@link SignalInput#getSignalName()}</b>
@@ -58,22 +122,43 @@ public final class TraceWorkflowInboundCallsInterceptor
    * Exceptions thrown during this executions will be notify to Newrelic as unexpected errors and will attempt
    * to retrieve additional information from the exception by using {@link ExceptionUtils#retrieveAdditionalData(Exception)}
    */
-  @Trace(dispatcher = true)
   @Override
   public void handleSignal(final SignalInput input) {
+    try (var scope = TraceContextCarrier.open()) {
+      if (!this.traceReplays && Workflow.isReplaying()) {
+        replay("signal/" + input.getSignalName(), () -> {
+          super.handleSignal(input);
+          return null;
+        });
+      } else {
+        tracedHandleSignal(input);
+      }
+    }
+  }
+
+  @Trace(dispatcher = true)
+  private void tracedHandleSignal(final SignalInput input) {
     var info = Workflow.getInfo();
+    if (!this.transactionSampler.sample(info.getWorkflowType())) {
+      unsampled(info.getWorkflowType(), () -> {
+        super.handleSignal(input);
+        return null;
+      });
+      return;
+    }
     NewRelic.setTransactionName(
         this.transactionCategory, info.getWorkflowType() + "/signal/" + input.getSignalName());
     try {
       super.handleSignal(input);
     } catch (Exception e) {
-      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e), false);
+      noticeError(e, info.getWorkflowType());
       throw e;
     }
   }
 
   /**
-   * Intercepts a query to a workflow to start a transaction.
+   * Intercepts a query to a workflow to start a transaction. Queries may be answered from a thread running an
+   * execution, so their scope only drops the context left on the thread when no other scope is open on it.
    * <br><br>
    * The transaction will be categorized as {@link #transactionCategory} and its name will be
    * <b>{@link ActivityInfo#getWorkflowType()}/signal/{@link QueryInput#getQueryName()}</b>
@@ -85,14 +170,79 @@ public final class TraceWorkflowInboundCallsInterceptor
   @Trace(dispatcher = true)
   @Override
   public QueryOutput handleQuery(final QueryInput input) {
-    var info = Workflow.getInfo();
-    NewRelic.setTransactionName(
-        this.transactionCategory, info.getWorkflowType() + "/signal/" + input.getQueryName());
+    try (var scope = TraceContextCarrier.open()) {
+      var info = Workflow.getInfo();
+      NewRelic.setTransactionName(
+          this.transactionCategory, info.getWorkflowType() + "/signal/" + input.getQueryName());
+      try {
+        return super.handleQuery(input);
+      } catch (Exception e) {
+        noticeError(e, info.getWorkflowType());
+        throw e;
+      }
+    }
+  }
+
+  /**
+   * Runs a replayed call without any transaction, only counting it. Errors are noticed only if the
+   * replay is over when they are thrown, and calls going on live past the replay are counted as
+   * resumed.
+   */
+  private <T> T replay(final String call, final Supplier<T> block) {
+    final var type = Workflow.getInfo().getWorkflowType();
+    final var metric = REPLAY_METRIC + type + "/" + call;
+    NewRelic.incrementCounter(metric);
+    final var start = System.nanoTime();
+    final T result;
     try {
-      return super.handleQuery(input);
+      result = block.get();
     } catch (Exception e) {
-      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e), false);
+      if (!endReplay(metric, start)) {
+        noticeError(e, type);
+      }
       throw e;
     }
+    endReplay(metric, start);
+    return result;
+  }
+
+  /**
+   * Records how long the replayed call took when it ended still replaying, or counts it as resumed.
+   * @return whether the call ended still replaying.
+   */
+  private static boolean endReplay(final String metric, final long start) {
+    if (Workflow.isReplaying()) {
+      NewRelic.recordResponseTimeMetric(
+          metric + "/duration", TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+      return true;
+    }
+    NewRelic.incrementCounter(metric + "/resumed");
+    return false;
+  }
+
+  /**
+   * Runs a call not sampled, ignoring its transaction and only recording it on the sampler.
+   */
+  private <T> T unsampled(final String type, final Supplier<T> block) {
+    NewRelic.getAgent().getTransaction().ignore();
+    final var start = System.nanoTime();
+    var failed = true;
+    try {
+      final var result = block.get();
+      failed = false;
+      return result;
+    } finally {
+      this.transactionSampler.recordUnsampled(type, System.nanoTime() - start, failed);
+    }
+  }
+
+  /**
+   * Notices the exception as an unexpected error, unless it is one of a storm of identical errors
+   * (see {@link ErrorDeduplicator}).
+   */
+  private void noticeError(final Exception e, final String type) {
+    if (this.errorDeduplicator.shouldReport(e, type)) {
+      NewRelic.noticeError(e, ExceptionUtils.retrieveAdditionalData(e, this.exceptionAttributeExtractor), false);
+    }
   }
 }
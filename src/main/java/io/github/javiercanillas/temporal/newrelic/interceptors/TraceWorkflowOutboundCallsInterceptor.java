@@ -0,0 +1,140 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.Segment;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricNames;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptorBase;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * This class extends {@link WorkflowOutboundCallsInterceptorBase} to time the calls a workflow
+ * makes, from the moment they are scheduled until their result is ready.
+ * <br><br>
+ * Each call is recorded as a segment of the current transaction, if any, categorized as
+ * {@value #SEGMENT_CATEGORY}, and as a <b>{@value #METRIC}{call}/{type}</b> response time metric,
+ * where {@code call} and {@code type} are:
+ * <ul>
+ *   <li>{@code activity} and {@code localActivity}, with the activity type.
+ *   <li>{@code childWorkflow}, with the child workflow type.
+ *   <li>{@code timer}, with {@code newTimer} or {@code sleep}.
+ *   <li>{@code signalExternal}, with the signal name.
+ * </ul>
+ * Types are bounded by {@link MetricNames#shared()}, so past its limit they are named {@value
+ * MetricNames#OTHER}. Calls made while the workflow is being replayed complete right away, so they
+ * are not recorded unless replays are traced.
+ * <br><br>
+ * Each segment is a new span, so with {@link
+ * io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagatorOptions#isReuseOutboundHeaders()}
+ * reused headers may name as parent the segment of an earlier call of the same transaction.
+ */
+final class TraceWorkflowOutboundCallsInterceptor extends WorkflowOutboundCallsInterceptorBase {
+
+  static final String SEGMENT_CATEGORY = "Temporal";
+  static final String METRIC = MetricNames.BASE + "outbound/";
+
+  private final boolean traceReplays;
+  private final MetricNames metricNames = MetricNames.shared();
+
+  TraceWorkflowOutboundCallsInterceptor(
+      final WorkflowOutboundCallsInterceptor next, final boolean traceReplays) {
+    super(next);
+    this.traceReplays = traceReplays;
+  }
+
+  @Override
+  public <R> ActivityOutput<R> executeActivity(final ActivityInput<R> input) {
+    final var call = start("activity/" + this.metricNames.type(input.getActivityName()));
+    final var output = super.executeActivity(input);
+    endOnCompletion(call, output.getResult());
+    return output;
+  }
+
+  @Override
+  public <R> LocalActivityOutput<R> executeLocalActivity(final LocalActivityInput<R> input) {
+    final var call = start("localActivity/" + this.metricNames.type(input.getActivityName()));
+    final var output = super.executeLocalActivity(input);
+    endOnCompletion(call, output.getResult());
+    return output;
+  }
+
+  @Override
+  public <R> ChildWorkflowOutput<R> executeChildWorkflow(final ChildWorkflowInput<R> input) {
+    final var call = start("childWorkflow/" + this.metricNames.type(input.getWorkflowType()));
+    final var output = super.executeChildWorkflow(input);
+    endOnCompletion(call, output.getResult());
+    return output;
+  }
+
+  @Override
+  public SignalExternalOutput signalExternalWorkflow(final SignalExternalInput input) {
+    final var call = start("signalExternal/" + this.metricNames.type(input.getSignalName()));
+    final var output = super.signalExternalWorkflow(input);
+    endOnCompletion(call, output.getResult());
+    return output;
+  }
+
+  @Override
+  public Promise<Void> newTimer(final Duration duration) {
+    final var call = start("timer/newTimer");
+    final var result = super.newTimer(duration);
+    endOnCompletion(call, result);
+    return result;
+  }
+
+  @Override
+  public void sleep(final Duration duration) {
+    final var call = start("timer/sleep");
+    try {
+      super.sleep(duration);
+    } finally {
+      end(call);
+    }
+  }
+
+  /**
+   * Starts timing a call, or returns null when it is not recorded.
+   */
+  private Call start(final String name) {
+    if (!this.traceReplays && Workflow.isReplaying()) {
+      return null;
+    }
+    final var segment =
+        NewRelic.getAgent().getTransaction().startSegment(SEGMENT_CATEGORY, name);
+    return new Call(METRIC + name, segment, System.nanoTime());
+  }
+
+  private static void endOnCompletion(final Call call, final Promise<?> result) {
+    if (call != null) {
+      result.handle(
+          (value, failure) -> {
+            end(call);
+            return null;
+          });
+    }
+  }
+
+  private static void end(final Call call) {
+    if (call != null) {
+      call.segment.end();
+      NewRelic.recordResponseTimeMetric(
+          call.metric, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - call.start));
+    }
+  }
+
+  private static final class Call {
+    private final String metric;
+    private final Segment segment;
+    private final long start;
+
+    private Call(final String metric, final Segment segment, final long start) {
+      this.metric = metric;
+      this.segment = segment;
+      this.start = start;
+    }
+  }
+}
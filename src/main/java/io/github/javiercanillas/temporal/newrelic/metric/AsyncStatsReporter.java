@@ -0,0 +1,424 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.uber.m3.tally.Buckets;
+import com.uber.m3.tally.Capabilities;
+import com.uber.m3.tally.StatsReporter;
+import com.uber.m3.util.Duration;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * {@link StatsReporter} that hands every report over to a delegate on a single dedicated thread,
+ * so threads reporting through tally never wait on the delegate (and the NewRelic agent behind
+ * it).
+ *
+ * Reports are copied into a bounded ring buffer of preallocated records (a Vyukov bounded queue,
+ * so no allocation happens while reporting) and drained in order by a daemon thread. When the
+ * buffer is full the {@link OverflowPolicy} decides whether the new report is dropped, the oldest
+ * queued report is dropped or the reporting thread waits for room. <br>
+ * <br>
+ * {@link #flush()} is also handed over: the drainer flushes the delegate once every report queued
+ * before it was delivered, and then reports {@value #QUEUE_DEPTH_METRIC} as a gauge and {@value
+ * #DROPPED_METRIC} as a counter to the delegate. The queue depth is the highest one seen by the
+ * drainer since the previous flush, since right after draining it would almost always be zero.
+ * {@link #close()} waits for the queue to be drained, flushes and closes the delegate.
+ */
+@Slf4j
+final class AsyncStatsReporter implements StatsReporter {
+
+  static final String QUEUE_DEPTH_METRIC = "reporter_async_queue_depth";
+  static final String DROPPED_METRIC = "reporter_async_dropped";
+  static final String THREAD_NAME = "temporal-newrelic-metric-reporter";
+
+  private static final long IDLE_PARK_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+  private static final long BLOCK_PARK_NANOS = TimeUnit.MICROSECONDS.toNanos(50);
+  private static final long CLOSE_TIMEOUT_MILLIS = TimeUnit.SECONDS.toMillis(10);
+
+  private final StatsReporter delegate;
+  private final OverflowPolicy overflowPolicy;
+  private final Record[] records;
+  private final AtomicLongArray sequences;
+  private final int mask;
+  private final AtomicLong head = new AtomicLong();
+  private final AtomicLong tail = new AtomicLong();
+  private final LongAdder dropped = new LongAdder();
+  private final AtomicBoolean flushRequested = new AtomicBoolean();
+  private final Record current = new Record();
+  private final Thread drainer;
+  /* only accessed by the drainer thread */
+  private long maxQueueDepth;
+  private volatile boolean idle;
+  private volatile boolean closed;
+
+  /**
+   * Builds the reporter and starts its drainer thread.
+   *
+   * @param delegate reporter every report is handed over to
+   * @param queueSize minimum number of reports kept on the queue, rounded up to a power of two
+   * @param overflowPolicy what to do with reports when the queue is full
+   */
+  AsyncStatsReporter(
+      final StatsReporter delegate, final int queueSize, final OverflowPolicy overflowPolicy) {
+    if (queueSize <= 0) {
+      throw new IllegalArgumentException("queueSize must be positive: " + queueSize);
+    }
+    this.delegate = delegate;
+    this.overflowPolicy = overflowPolicy;
+    final var capacity = queueSize <= 2 ? 2 : Integer.highestOneBit(queueSize - 1) << 1;
+    this.mask = capacity - 1;
+    this.records = new Record[capacity];
+    this.sequences = new AtomicLongArray(capacity);
+    for (int i = 0; i < capacity; i++) {
+      records[i] = new Record();
+      sequences.set(i, i);
+    }
+    this.drainer = new Thread(this::drain, THREAD_NAME);
+    this.drainer.setDaemon(true);
+    this.drainer.start();
+  }
+
+  @Override
+  public void reportCounter(final String name, final Map<String, String> tags, final long value) {
+    final var pos = claimTail();
+    if (pos >= 0) {
+      final var record = records[index(pos)];
+      record.type = Record.COUNTER;
+      record.name = name;
+      record.tags = tags;
+      record.longValue = value;
+      publish(pos);
+    }
+  }
+
+  @Override
+  public void reportGauge(final String name, final Map<String, String> tags, final double value) {
+    final var pos = claimTail();
+    if (pos >= 0) {
+      final var record = records[index(pos)];
+      record.type = Record.GAUGE;
+      record.name = name;
+      record.tags = tags;
+      record.doubleValue = value;
+      publish(pos);
+    }
+  }
+
+  @Override
+  public void reportTimer(
+      final String name, final Map<String, String> tags, final Duration interval) {
+    final var pos = claimTail();
+    if (pos >= 0) {
+      final var record = records[index(pos)];
+      record.type = Record.TIMER;
+      record.name = name;
+      record.tags = tags;
+      record.duration = interval;
+      publish(pos);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void reportHistogramValueSamples(
+      final String name,
+      final Map<String, String> tags,
+      final Buckets buckets,
+      final double bucketLowerBound,
+      final double bucketUpperBound,
+      final long samples) {
+    final var pos = claimTail();
+    if (pos >= 0) {
+      final var record = records[index(pos)];
+      record.type = Record.HISTOGRAM_VALUE;
+      record.name = name;
+      record.tags = tags;
+      record.buckets = buckets;
+      record.doubleValue = bucketLowerBound;
+      record.doubleUpperBound = bucketUpperBound;
+      record.longValue = samples;
+      publish(pos);
+    }
+  }
+
+  @SuppressWarnings("deprecation")
+  @Override
+  public void reportHistogramDurationSamples(
+      final String name,
+      final Map<String, String> tags,
+      final Buckets buckets,
+      final Duration bucketLowerBound,
+      final Duration bucketUpperBound,
+      final long samples) {
+    final var pos = claimTail();
+    if (pos >= 0) {
+      final var record = records[index(pos)];
+      record.type = Record.HISTOGRAM_DURATION;
+      record.name = name;
+      record.tags = tags;
+      record.buckets = buckets;
+      record.duration = bucketLowerBound;
+      record.durationUpperBound = bucketUpperBound;
+      record.longValue = samples;
+      publish(pos);
+    }
+  }
+
+  @Override
+  public Capabilities capabilities() {
+    return delegate.capabilities();
+  }
+
+  /** Asks the drainer to flush the delegate once every report queued so far was delivered. */
+  @Override
+  public void flush() {
+    flushRequested.set(true);
+    LockSupport.unpark(drainer);
+  }
+
+  /**
+   * Stops accepting reports and waits (up to 10 seconds) for the drainer to deliver the queued
+   * ones, flush and close the delegate.
+   */
+  @Override
+  public void close() {
+    closed = true;
+    LockSupport.unpark(drainer);
+    try {
+      drainer.join(CLOSE_TIMEOUT_MILLIS);
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    if (drainer.isAlive()) {
+      log.warn("{} did not finish draining its queue in time", THREAD_NAME);
+    }
+  }
+
+  /**
+   * Number of reports waiting on the queue.
+   *
+   * @return current queue depth
+   */
+  long getQueueDepth() {
+    return Math.max(0L, tail.get() - head.get());
+  }
+
+  /**
+   * Number of reports dropped since the last flush.
+   *
+   * @return dropped reports
+   */
+  long getDropped() {
+    return dropped.sum();
+  }
+
+  private int index(final long pos) {
+    return (int) pos & mask;
+  }
+
+  /** Claims a slot to write a report on, or returns -1 when the report has to be dropped. */
+  private long claimTail() {
+    while (!closed) {
+      var pos = tail.get();
+      while (true) {
+        final var difference = sequences.get(index(pos)) - pos;
+        if (difference == 0) {
+          if (tail.compareAndSet(pos, pos + 1)) {
+            return pos;
+          }
+          pos = tail.get();
+        } else if (difference < 0) {
+          break;
+        } else {
+          pos = tail.get();
+        }
+      }
+      // queue is full
+      switch (overflowPolicy) {
+        case DROP_OLDEST:
+          final var oldest = claimHead();
+          if (oldest >= 0) {
+            release(oldest);
+            dropped.increment();
+          }
+          break;
+        case BLOCK:
+          LockSupport.unpark(drainer);
+          LockSupport.parkNanos(BLOCK_PARK_NANOS);
+          break;
+        default:
+          dropped.increment();
+          return -1;
+      }
+    }
+    dropped.increment();
+    return -1;
+  }
+
+  private void publish(final long pos) {
+    sequences.set(index(pos), pos + 1);
+    if (idle) {
+      LockSupport.unpark(drainer);
+    }
+  }
+
+  /** Claims the oldest published report, or returns -1 when the queue is empty. */
+  private long claimHead() {
+    var pos = head.get();
+    while (true) {
+      final var difference = sequences.get(index(pos)) - (pos + 1);
+      if (difference == 0) {
+        if (head.compareAndSet(pos, pos + 1)) {
+          return pos;
+        }
+        pos = head.get();
+      } else if (difference < 0) {
+        return -1;
+      } else {
+        pos = head.get();
+      }
+    }
+  }
+
+  private void release(final long pos) {
+    records[index(pos)].clear();
+    sequences.set(index(pos), pos + mask + 1);
+  }
+
+  private void drain() {
+    while (true) {
+      final var stopping = closed;
+      drainQueue();
+      if (flushRequested.getAndSet(false) || stopping) {
+        flushDelegate();
+      }
+      if (stopping) {
+        closeDelegate();
+        return;
+      }
+      idle = true;
+      if (getQueueDepth() == 0 && !flushRequested.get() && !closed) {
+        LockSupport.parkNanos(this, IDLE_PARK_NANOS);
+      }
+      idle = false;
+    }
+  }
+
+  private void drainQueue() {
+    long pos;
+    while (true) {
+      final var depth = getQueueDepth();
+      if (depth > maxQueueDepth) {
+        maxQueueDepth = depth;
+      }
+      if ((pos = claimHead()) < 0) {
+        break;
+      }
+      // copied out, so the slot is free again while the delegate is busy with the report
+      current.copyFrom(records[index(pos)]);
+      release(pos);
+      try {
+        current.deliver(delegate);
+      } catch (RuntimeException e) {
+        log.warn("Error while reporting metric", e);
+      } finally {
+        current.clear();
+      }
+    }
+  }
+
+  private void flushDelegate() {
+    try {
+      delegate.reportGauge(QUEUE_DEPTH_METRIC, Map.of(), maxQueueDepth);
+      maxQueueDepth = 0;
+      final var droppedReports = dropped.sumThenReset();
+      if (droppedReports > 0) {
+        log.debug("{} metric reports dropped since last flush", droppedReports);
+        delegate.reportCounter(DROPPED_METRIC, Map.of(), droppedReports);
+      }
+      delegate.flush();
+    } catch (RuntimeException e) {
+      log.warn("Error while flushing metrics", e);
+    }
+  }
+
+  private void closeDelegate() {
+    try {
+      delegate.close();
+    } catch (RuntimeException e) {
+      log.warn("Error while closing metric reporter", e);
+    }
+  }
+
+  /** Preallocated slot of the queue, holding the arguments of a single report. */
+  private static final class Record {
+    private static final int COUNTER = 1;
+    private static final int GAUGE = 2;
+    private static final int TIMER = 3;
+    private static final int HISTOGRAM_VALUE = 4;
+    private static final int HISTOGRAM_DURATION = 5;
+
+    private int type;
+    private String name;
+    private Map<String, String> tags;
+    private Buckets buckets;
+    private long longValue;
+    private double doubleValue;
+    private double doubleUpperBound;
+    private Duration duration;
+    private Duration durationUpperBound;
+
+    @SuppressWarnings("deprecation")
+    private void deliver(final StatsReporter reporter) {
+      switch (type) {
+        case COUNTER:
+          reporter.reportCounter(name, tags, longValue);
+          break;
+        case GAUGE:
+          reporter.reportGauge(name, tags, doubleValue);
+          break;
+        case TIMER:
+          reporter.reportTimer(name, tags, duration);
+          break;
+        case HISTOGRAM_VALUE:
+          reporter.reportHistogramValueSamples(
+              name, tags, buckets, doubleValue, doubleUpperBound, longValue);
+          break;
+        case HISTOGRAM_DURATION:
+          reporter.reportHistogramDurationSamples(
+              name, tags, buckets, duration, durationUpperBound, longValue);
+          break;
+        default:
+          break;
+      }
+    }
+
+    private void copyFrom(final Record other) {
+      type = other.type;
+      name = other.name;
+      tags = other.tags;
+      buckets = other.buckets;
+      longValue = other.longValue;
+      doubleValue = other.doubleValue;
+      doubleUpperBound = other.doubleUpperBound;
+      duration = other.duration;
+      durationUpperBound = other.durationUpperBound;
+    }
+
+    /** Drops references, so reported names and tags are not retained by the queue. */
+    private void clear() {
+      type = 0;
+      name = null;
+      tags = null;
+      buckets = null;
+      duration = null;
+      durationUpperBound = null;
+    }
+  }
+}
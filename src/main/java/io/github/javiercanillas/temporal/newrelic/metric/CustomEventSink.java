@@ -0,0 +1,141 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.NewRelic;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Sends aggregated values as {@value #EVENT_TYPE} custom events, one per metric per flush, with
+ * the metric tags as attributes so they can be faceted. Besides tags, every event has:
+ *
+ * <ul>
+ *   <li>{@code metricName} and {@code metricType} ({@code counter}, {@code gauge}, {@code timer} or
+ *       {@code histogram}).
+ *   <li>{@code value} for counters and gauges.
+ *   <li>{@code count}, {@code sum}, {@code min}, {@code max} and {@code mean} (in milliseconds) for
+ *       timers.
+ *   <li>{@code count}, {@code p50}, {@code p90}, {@code p99} and {@code max} for histograms.
+ * </ul>
+ *
+ * Tags named like any of those attributes are prefixed with {@value #TAG_PREFIX}, so they never
+ * overwrite them.
+ * <br>
+ * Events are collected into a bounded buffer kept across flushes, and every {@link #flush()}
+ * records at most {@code maxEventsPerFlush} of them, the oldest first, leaving the rest for the
+ * next ones. This spreads bursts of events over several report intervals. Events that do not fit
+ * in the buffer are dropped and counted under {@value #DROPPED_METRIC}.
+ */
+@Slf4j
+final class CustomEventSink implements MetricSink {
+
+  static final String EVENT_TYPE = "TemporalMetric";
+  static final String DROPPED_METRIC = MetricScopeReporter.METRIC_BASE + "reporter/events/dropped";
+  static final String TAG_PREFIX = "tag.";
+
+  private static final Set<String> RESERVED_ATTRIBUTES =
+      Set.of(
+          "metricName", "metricType", "value", "count", "sum", "min", "max", "mean", "p50", "p90",
+          "p99");
+
+  private static final double NANOS_PER_MILLI = 1_000_000d;
+
+  private final BlockingQueue<Map<String, Object>> buffer;
+  private final int maxEventsPerFlush;
+  private final LongAdder dropped = new LongAdder();
+
+  CustomEventSink(final int bufferSize, final int maxEventsPerFlush) {
+    this.buffer = new ArrayBlockingQueue<>(bufferSize);
+    this.maxEventsPerFlush = maxEventsPerFlush;
+  }
+
+  @Override
+  public void counter(final MetricId id, final long value) {
+    final var event = newEvent(id, 1);
+    event.put("value", value);
+    offer(event);
+  }
+
+  @Override
+  public void gauge(final MetricId id, final double value) {
+    final var event = newEvent(id, 1);
+    event.put("value", value);
+    offer(event);
+  }
+
+  @Override
+  public void timer(
+      final MetricId id,
+      final long count,
+      final long totalNanos,
+      final long minNanos,
+      final long maxNanos) {
+    final var event = newEvent(id, 5);
+    event.put("count", count);
+    event.put("sum", totalNanos / NANOS_PER_MILLI);
+    event.put("min", minNanos / NANOS_PER_MILLI);
+    event.put("max", maxNanos / NANOS_PER_MILLI);
+    event.put("mean", totalNanos / NANOS_PER_MILLI / count);
+    offer(event);
+  }
+
+  @Override
+  public void histogram(
+      final MetricId id,
+      final long count,
+      final double p50,
+      final double p90,
+      final double p99,
+      final double max) {
+    final var event = newEvent(id, 5);
+    event.put("count", count);
+    event.put("p50", p50);
+    event.put("p90", p90);
+    event.put("p99", p99);
+    event.put("max", max);
+    offer(event);
+  }
+
+  /**
+   * Records up to {@code maxEventsPerFlush} buffered events and reports how many were dropped since
+   * last flush.
+   */
+  @Override
+  public void flush() {
+    final List<Map<String, Object>> batch =
+        new ArrayList<>(Math.min(maxEventsPerFlush, buffer.size()));
+    buffer.drainTo(batch, maxEventsPerFlush);
+    if (!batch.isEmpty()) {
+      final var insights = NewRelic.getAgent().getInsights();
+      batch.forEach(event -> insights.recordCustomEvent(EVENT_TYPE, event));
+    }
+    final var droppedEvents = dropped.sumThenReset();
+    if (droppedEvents > 0) {
+      log.debug("{} {} events dropped since last flush", droppedEvents, EVENT_TYPE);
+      MetricScopeReporter.incrementCounter(DROPPED_METRIC, droppedEvents);
+    }
+  }
+
+  private void offer(final Map<String, Object> event) {
+    if (!buffer.offer(event)) {
+      dropped.increment();
+    }
+  }
+
+  private static Map<String, Object> newEvent(final MetricId id, final int values) {
+    final var tags = id.getTags();
+    final var event = new HashMap<String, Object>((tags.size() + values + 2) * 4 / 3 + 1);
+    tags.forEach(
+        (tag, value) -> event.put(RESERVED_ATTRIBUTES.contains(tag) ? TAG_PREFIX + tag : tag, value));
+    event.put("metricName", id.getName());
+    event.put("metricType", id.getKind().getSegment());
+    return event;
+  }
+}
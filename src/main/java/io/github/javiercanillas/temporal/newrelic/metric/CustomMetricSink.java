@@ -0,0 +1,60 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.NewRelic;
+
+/**
+ * Sends aggregated values as NewRelic custom metrics named after {@link MetricId#getPath()}:
+ *
+ * <ul>
+ *   <li>Counters with {@link NewRelic#incrementCounter(String, int)}.
+ *   <li>Gauges with {@link NewRelic#recordMetric(String, float)}.
+ *   <li>Timers with a single {@link NewRelic#recordResponseTimeMetric(String, long)} of their mean
+ *       duration, whatever the number of recorded durations, plus a {@code /count} counter with that
+ *       number. Min and max are sent as {@code /min} and {@code /max} metrics, all in milliseconds.
+ *   <li>Histograms as {@code /p50}, {@code /p90}, {@code /p99} and {@code /max} metrics and a
+ *       {@code /count} counter.
+ * </ul>
+ */
+final class CustomMetricSink implements MetricSink {
+
+  private static final long NANOS_PER_MILLI = 1_000_000L;
+
+  @Override
+  public void counter(final MetricId id, final long value) {
+    MetricScopeReporter.incrementCounter(id.getPath(), value);
+  }
+
+  @Override
+  public void gauge(final MetricId id, final double value) {
+    NewRelic.recordMetric(id.getPath(), (float) value);
+  }
+
+  @Override
+  public void timer(
+      final MetricId id,
+      final long count,
+      final long totalNanos,
+      final long minNanos,
+      final long maxNanos) {
+    NewRelic.recordResponseTimeMetric(
+        id.getPath(), Math.round((double) totalNanos / count / NANOS_PER_MILLI));
+    MetricScopeReporter.incrementCounter(id.getPath(MetricId.Suffix.COUNT), count);
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.MIN), minNanos / NANOS_PER_MILLI);
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.MAX), maxNanos / NANOS_PER_MILLI);
+  }
+
+  @Override
+  public void histogram(
+      final MetricId id,
+      final long count,
+      final double p50,
+      final double p90,
+      final double p99,
+      final double max) {
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.P50), (float) p50);
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.P90), (float) p90);
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.P99), (float) p99);
+    NewRelic.recordMetric(id.getPath(MetricId.Suffix.MAX), (float) max);
+    MetricScopeReporter.incrementCounter(id.getPath(MetricId.Suffix.COUNT), count);
+  }
+}
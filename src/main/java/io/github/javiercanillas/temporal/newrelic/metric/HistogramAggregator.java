@@ -0,0 +1,191 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Merges histogram samples reported by tally into fixed-bucket histograms, one per metric,
+ * and on every flush hands their count, p50, p90, p99 and max over to a {@link MetricSink}.
+ *
+ * Buckets are log-linear: every power of two is split in {@value #SUB_BUCKETS} linear sub-buckets,
+ * covering from 2<sup>{@value #MIN_EXPONENT}</sup> to 2<sup>{@value #MAX_EXPONENT}</sup> with a
+ * relative error below 12.5%, using {@value #BUCKETS} longs per histogram no matter how many
+ * samples are merged. Tally samples are placed at the upper bound of the tally bucket they belong
+ * to (or the lower bound for the last, unbounded, bucket), so percentiles never underestimate.
+ * The max is tracked exactly, apart from the buckets: values beyond the highest bucket are counted
+ * on it, and percentiles falling there are reported as that exact max rather than the bucket bound.
+ * <br>
+ * As on {@link MetricAggregator}, histograms with no samples during a whole window are evicted on
+ * flush, and a report racing with the eviction moves its samples to a new histogram.
+ */
+final class HistogramAggregator {
+
+  static final int SUB_BUCKET_BITS = 3;
+  static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+  static final int MIN_EXPONENT = -10;
+  static final int MAX_EXPONENT = 40;
+  /* first bucket holds every value below 2^MIN_EXPONENT, including zero and negatives */
+  static final int BUCKETS = 1 + (MAX_EXPONENT - MIN_EXPONENT + 1) * SUB_BUCKETS;
+
+  private final ConcurrentHashMap<Object, Histogram> histograms = new ConcurrentHashMap<>();
+
+  /**
+   * Merges samples into the histogram of the given metric.
+   *
+   * @param id compiled metric
+   * @param value representative value of the samples
+   * @param samples how many samples had that value
+   */
+  void record(final MetricId id, final double value, final long samples) {
+    if (samples <= 0) {
+      return;
+    }
+    var histogram = histograms.get(id.getAggregationKey());
+    if (histogram == null) {
+      histogram = histograms.computeIfAbsent(id.getAggregationKey(), k -> new Histogram(id));
+    }
+    histogram.record(value, samples);
+    if (histogram.evicted) {
+      final var moved = new Histogram(id);
+      synchronized (histogram) {
+        histogram.drainTo(moved);
+      }
+      if (moved.count.sum() != 0) {
+        moved.drainTo(histograms.computeIfAbsent(id.getAggregationKey(), k -> new Histogram(id)));
+      }
+    }
+  }
+
+  /**
+   * Hands percentiles of every histogram with samples since the previous flush over to the sink
+   * and resets them. Histograms with nothing to hand over are evicted.
+   *
+   * @param sink where percentiles are sent
+   */
+  void flush(final MetricSink sink) {
+    histograms.forEach(
+        (key, histogram) -> {
+          if (!histogram.flush(sink)) {
+            synchronized (histogram) {
+              histogram.evicted = true;
+              histograms.remove(key, histogram);
+              histogram.flush(sink);
+            }
+          }
+        });
+  }
+
+  int size() {
+    return histograms.size();
+  }
+
+  static int bucketIndex(final double value) {
+    if (!(value > 0d)) {
+      return 0;
+    }
+    // buckets include their upper bound, so round values (as tally bounds are) are kept exact
+    final var included = Math.nextDown(value);
+    final var exponent = Math.getExponent(included);
+    if (exponent < MIN_EXPONENT) {
+      return 0;
+    }
+    if (exponent > MAX_EXPONENT) {
+      return BUCKETS - 1;
+    }
+    final var subBucket =
+        (int) (Double.doubleToRawLongBits(included) >>> (52 - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+    return 1 + (exponent - MIN_EXPONENT) * SUB_BUCKETS + subBucket;
+  }
+
+  static double bucketUpperBound(final int index) {
+    if (index == 0) {
+      return Math.scalb(1d, MIN_EXPONENT);
+    }
+    final var exponent = MIN_EXPONENT + (index - 1) / SUB_BUCKETS;
+    final var subBucket = (index - 1) % SUB_BUCKETS;
+    return Math.scalb(1d + (subBucket + 1) / (double) SUB_BUCKETS, exponent);
+  }
+
+  private static final class Histogram {
+    private static final long NO_MAX = Double.doubleToRawLongBits(Double.NEGATIVE_INFINITY);
+
+    private final MetricId id;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final LongAdder count = new LongAdder();
+    private final AtomicLong max = new AtomicLong(NO_MAX);
+    /** Set, while holding the histogram lock, once it was removed from the map. */
+    private volatile boolean evicted;
+
+    private Histogram(final MetricId id) {
+      this.id = id;
+    }
+
+    private void record(final double value, final long samples) {
+      buckets.addAndGet(bucketIndex(value), samples);
+      count.add(samples);
+      accumulateMax(value);
+    }
+
+    private void accumulateMax(final double value) {
+      final var bits = Double.doubleToRawLongBits(value);
+      var current = max.get();
+      while (Double.longBitsToDouble(current) < value && !max.compareAndSet(current, bits)) {
+        current = max.get();
+      }
+    }
+
+    private void drainTo(final Histogram target) {
+      final var total = count.sumThenReset();
+      if (total == 0) {
+        return;
+      }
+      for (int i = 0; i < BUCKETS; i++) {
+        final var samples = buckets.getAndSet(i, 0L);
+        if (samples != 0) {
+          target.buckets.addAndGet(i, samples);
+        }
+      }
+      target.accumulateMax(Double.longBitsToDouble(max.getAndSet(NO_MAX)));
+      target.count.add(total);
+    }
+
+    /** Returns whether there was anything to hand over. */
+    private boolean flush(final MetricSink sink) {
+      final var total = count.sumThenReset();
+      if (total == 0) {
+        return false;
+      }
+      final var highest = Double.longBitsToDouble(max.getAndSet(NO_MAX));
+      final var snapshot = new long[BUCKETS];
+      var merged = 0L;
+      for (int i = 0; i < BUCKETS; i++) {
+        snapshot[i] = buckets.getAndSet(i, 0L);
+        merged += snapshot[i];
+      }
+      sink.histogram(
+          id,
+          total,
+          percentile(snapshot, merged, 0.5d, highest),
+          percentile(snapshot, merged, 0.9d, highest),
+          percentile(snapshot, merged, 0.99d, highest),
+          highest);
+      return true;
+    }
+
+    private static double percentile(
+        final long[] snapshot, final long total, final double percentile, final double highest) {
+      final var rank = (long) Math.ceil(percentile * total);
+      var accumulated = 0L;
+      for (int i = 0; i < snapshot.length; i++) {
+        accumulated += snapshot[i];
+        if (accumulated >= rank) {
+          // the last bucket is unbounded, so its upper bound would underestimate
+          return i == BUCKETS - 1 ? highest : Math.min(bucketUpperBound(i), highest);
+        }
+      }
+      return highest;
+    }
+  }
+}
@@ -0,0 +1,203 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Aggregates reported values locally between flushes, so the {@link MetricSink} is called once per
+ * metric per window instead of once per report:
+ *
+ * <ul>
+ *   <li>Counters are summed as longs.
+ *   <li>Gauges keep the last reported value.
+ *   <li>Timers keep count, sum, min and max.
+ * </ul>
+ *
+ * Accumulators are striped ({@link LongAdder}, {@link LongAccumulator}) or single atomics, so
+ * reporting threads never block each other. Values reported while a flush is in progress may land
+ * on the current or the next window.
+ * <br>
+ * Metrics with nothing reported during a whole window are evicted on flush, so only the series
+ * still in use are kept in memory. A report racing with the eviction of its accumulator moves its
+ * value to a new one, so nothing is lost.
+ */
+final class MetricAggregator {
+
+  private static final long NO_GAUGE = Double.doubleToRawLongBits(Double.NaN) ^ 1L;
+
+  private final ConcurrentHashMap<Object, CounterAccumulator> counters = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Object, GaugeAccumulator> gauges = new ConcurrentHashMap<>();
+  private final ConcurrentHashMap<Object, TimerAccumulator> timers = new ConcurrentHashMap<>();
+
+  void addCounter(final MetricId id, final long value) {
+    var counter = counters.get(id.getAggregationKey());
+    if (counter == null) {
+      counter = counters.computeIfAbsent(id.getAggregationKey(), k -> new CounterAccumulator(id));
+    }
+    counter.sum.add(value);
+    if (counter.evicted) {
+      final long moved;
+      synchronized (counter) {
+        moved = counter.sum.sumThenReset();
+      }
+      if (moved != 0) {
+        addCounter(id, moved);
+      }
+    }
+  }
+
+  void setGauge(final MetricId id, final double value) {
+    var gauge = gauges.get(id.getAggregationKey());
+    if (gauge == null) {
+      gauge = gauges.computeIfAbsent(id.getAggregationKey(), k -> new GaugeAccumulator(id));
+    }
+    gauge.bits.set(Double.doubleToRawLongBits(value));
+    if (gauge.evicted) {
+      final long moved;
+      synchronized (gauge) {
+        moved = gauge.bits.getAndSet(NO_GAUGE);
+      }
+      if (moved != NO_GAUGE) {
+        setGauge(id, Double.longBitsToDouble(moved));
+      }
+    }
+  }
+
+  void recordTimer(final MetricId id, final long nanos) {
+    var timer = timers.get(id.getAggregationKey());
+    if (timer == null) {
+      timer = timers.computeIfAbsent(id.getAggregationKey(), k -> new TimerAccumulator(id));
+    }
+    timer.record(nanos);
+    if (timer.evicted) {
+      final TimerAccumulator moved = new TimerAccumulator(id);
+      synchronized (timer) {
+        timer.drainTo(moved);
+      }
+      if (moved.count.sum() != 0) {
+        moved.drainTo(timers.computeIfAbsent(id.getAggregationKey(), k -> new TimerAccumulator(id)));
+      }
+    }
+  }
+
+  /**
+   * Hands every value aggregated since the previous flush over to the sink and resets them. Metrics
+   * with nothing to hand over are evicted.
+   *
+   * @param sink where aggregated values are sent
+   */
+  void flush(final MetricSink sink) {
+    counters.forEach(
+        (key, counter) -> {
+          var sum = counter.sum.sumThenReset();
+          if (sum == 0) {
+            synchronized (counter) {
+              counter.evicted = true;
+              counters.remove(key, counter);
+              sum = counter.sum.sumThenReset();
+            }
+          }
+          if (sum != 0) {
+            sink.counter(counter.id, sum);
+          }
+        });
+    gauges.forEach(
+        (key, gauge) -> {
+          var bits = gauge.bits.getAndSet(NO_GAUGE);
+          if (bits == NO_GAUGE) {
+            synchronized (gauge) {
+              gauge.evicted = true;
+              gauges.remove(key, gauge);
+              bits = gauge.bits.getAndSet(NO_GAUGE);
+            }
+          }
+          if (bits != NO_GAUGE) {
+            sink.gauge(gauge.id, Double.longBitsToDouble(bits));
+          }
+        });
+    timers.forEach(
+        (key, timer) -> {
+          if (!timer.flush(sink)) {
+            synchronized (timer) {
+              timer.evicted = true;
+              timers.remove(key, timer);
+              timer.flush(sink);
+            }
+          }
+        });
+  }
+
+  int size() {
+    return counters.size() + gauges.size() + timers.size();
+  }
+
+  /**
+   * Set, while holding the accumulator lock, once it was removed from its map. Reports that see it
+   * move what is left on the accumulator, under the same lock, to the one now on the map.
+   */
+  private abstract static class Accumulator {
+    final MetricId id;
+    volatile boolean evicted;
+
+    Accumulator(final MetricId id) {
+      this.id = id;
+    }
+  }
+
+  private static final class CounterAccumulator extends Accumulator {
+    private final LongAdder sum = new LongAdder();
+
+    private CounterAccumulator(final MetricId id) {
+      super(id);
+    }
+  }
+
+  private static final class GaugeAccumulator extends Accumulator {
+    private final AtomicLong bits = new AtomicLong(NO_GAUGE);
+
+    private GaugeAccumulator(final MetricId id) {
+      super(id);
+    }
+  }
+
+  private static final class TimerAccumulator extends Accumulator {
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator min = new LongAccumulator(Math::min, Long.MAX_VALUE);
+    private final LongAccumulator max = new LongAccumulator(Math::max, Long.MIN_VALUE);
+
+    private TimerAccumulator(final MetricId id) {
+      super(id);
+    }
+
+    private void record(final long nanos) {
+      sum.add(nanos);
+      min.accumulate(nanos);
+      max.accumulate(nanos);
+      count.increment();
+    }
+
+    /** Returns whether there was anything to hand over. */
+    private boolean flush(final MetricSink sink) {
+      final var samples = count.sumThenReset();
+      if (samples == 0) {
+        return false;
+      }
+      sink.timer(id, samples, sum.sumThenReset(), min.getThenReset(), max.getThenReset());
+      return true;
+    }
+
+    private void drainTo(final TimerAccumulator target) {
+      final var samples = count.sumThenReset();
+      if (samples == 0) {
+        return;
+      }
+      target.sum.add(sum.sumThenReset());
+      target.min.accumulate(min.getThenReset());
+      target.max.accumulate(max.getThenReset());
+      target.count.add(samples);
+    }
+  }
+}
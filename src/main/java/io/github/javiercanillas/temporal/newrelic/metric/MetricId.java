@@ -0,0 +1,88 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import java.util.Map;
+
+/**
+ * A compiled metric: the key it was reported with and the NewRelic metric name (path) built for
+ * it. Names derived from the path (like {@code <path>/count}) are built once, on first use.
+ */
+final class MetricId {
+
+  /** Suffixes appended to the path for metrics derived from aggregated values. */
+  enum Suffix {
+    COUNT("/count"),
+    MIN("/min"),
+    MAX("/max"),
+    P50("/p50"),
+    P90("/p90"),
+    P99("/p99");
+
+    private final String value;
+
+    Suffix(final String value) {
+      this.value = value;
+    }
+  }
+
+  private final MetricKey key;
+  private final String path;
+  private final Object aggregationKey;
+  /* benign race: concurrent initializations produce equal interned strings */
+  private final String[] derivedPaths = new String[Suffix.values().length];
+
+  MetricId(final MetricKey key, final String path) {
+    this(key, path, path);
+  }
+
+  /**
+   * Builds a compiled metric.
+   *
+   * @param key the key it was reported with
+   * @param path NewRelic metric name
+   * @param aggregationKey identifies which reports are aggregated together, usually the path
+   */
+  MetricId(final MetricKey key, final String path, final Object aggregationKey) {
+    this.key = key;
+    this.path = path;
+    this.aggregationKey = aggregationKey;
+  }
+
+  MetricKind getKind() {
+    return key.getKind();
+  }
+
+  String getName() {
+    return key.getName();
+  }
+
+  Map<String, String> getTags() {
+    return key.getTags();
+  }
+
+  String getPath() {
+    return path;
+  }
+
+  /**
+   * Reports with equal aggregation keys are aggregated together. It is the path when values are
+   * sent as custom metrics, since several tag combinations may share a name, and the key itself
+   * when tags are sent along with values.
+   */
+  Object getAggregationKey() {
+    return aggregationKey;
+  }
+
+  String getPath(final Suffix suffix) {
+    var derived = derivedPaths[suffix.ordinal()];
+    if (derived == null) {
+      derived = (path + suffix.value).intern();
+      derivedPaths[suffix.ordinal()] = derived;
+    }
+    return derived;
+  }
+
+  @Override
+  public String toString() {
+    return path;
+  }
+}
@@ -0,0 +1,71 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Identifies a reported metric by its kind, name and tags. Hash code is computed once since keys
+ * are built on every report and compared against the ones held by caches.
+ */
+final class MetricKey {
+
+  private final MetricKind kind;
+  private final String name;
+  private final Map<String, String> tags;
+  private final int hash;
+
+  MetricKey(final MetricKind kind, final String name, final Map<String, String> tags) {
+    this.kind = kind;
+    this.name = name;
+    this.tags = tags == null ? Collections.emptyMap() : tags;
+    this.hash = 31 * (31 * kind.hashCode() + name.hashCode()) + this.tags.hashCode();
+  }
+
+  MetricKind getKind() {
+    return kind;
+  }
+
+  String getName() {
+    return name;
+  }
+
+  Map<String, String> getTags() {
+    return tags;
+  }
+
+  /**
+   * Returns a key safe to be retained: tags are copied since callers may hand over mutable maps.
+   */
+  MetricKey retainable() {
+    return tags.isEmpty()
+        ? this
+        : new MetricKey(kind, name, Collections.unmodifiableMap(new HashMap<>(tags)));
+  }
+
+  @Override
+  public boolean equals(final Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof MetricKey)) {
+      return false;
+    }
+    final var other = (MetricKey) o;
+    return hash == other.hash
+        && kind == other.kind
+        && name.equals(other.name)
+        // tally's ImmutableMap only equals other ImmutableMaps, so check both ways
+        && (tags.equals(other.tags) || other.tags.equals(tags));
+  }
+
+  @Override
+  public int hashCode() {
+    return hash;
+  }
+
+  @Override
+  public String toString() {
+    return kind + ":" + name + tags;
+  }
+}
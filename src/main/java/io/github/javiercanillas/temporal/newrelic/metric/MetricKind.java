@@ -0,0 +1,19 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+/** Kinds of metrics reported by {@link MetricScopeReporter}, along with their name segment. */
+enum MetricKind {
+  COUNTER("counter"),
+  GAUGE("gauge"),
+  TIMER("timer"),
+  HISTOGRAM("histogram");
+
+  private final String segment;
+
+  MetricKind(final String segment) {
+    this.segment = segment;
+  }
+
+  String getSegment() {
+    return segment;
+  }
+}
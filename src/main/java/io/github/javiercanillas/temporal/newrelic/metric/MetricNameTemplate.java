@@ -0,0 +1,176 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import io.temporal.serviceclient.MetricsTag;
+import lombok.EqualsAndHashCode;
+import lombok.NonNull;
+
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Describes which tags appear on a metric name, and in which order. Templates are plain text with
+ * {@code {tag}} placeholders, replaced by the value of that tag (or by the placeholder when the tag
+ * is missing), and a mandatory {@value #NAME} placeholder replaced by the metric name. For
+ * example:
+ *
+ * <pre>{@code
+ * var template = MetricNameTemplate.compile("{namespace}/{task_queue}/{name}", "none");
+ * }</pre>
+ *
+ * Will name a counter {@code workflow_completed} reported with {@code task_queue=orders} as:
+ *
+ * <pre>
+ *     Custom/temporalio/counter/none/orders/workflow_completed
+ * </pre>
+ *
+ * Templates are parsed once into a list of literal and tag segments, so formatting a name is a
+ * single pass over that list with no parsing involved.
+ */
+@EqualsAndHashCode(onlyExplicitlyIncluded = true)
+public final class MetricNameTemplate {
+
+  /** Placeholder replaced by the metric name. */
+  public static final String NAME = "{name}";
+
+  /** Placeholder used for missing tags when none is given. */
+  public static final String DEFAULT_PLACEHOLDER = "none";
+
+  /** Every tag reported by Temporal, in a fixed order, followed by the metric name. */
+  public static final MetricNameTemplate DEFAULT =
+      compile(
+          Stream.of(
+                  MetricsTag.NAMESPACE,
+                  MetricsTag.WORKER_TYPE,
+                  MetricsTag.TASK_QUEUE,
+                  MetricsTag.WORKFLOW_TYPE,
+                  MetricsTag.OPERATION_NAME,
+                  MetricsTag.SIGNAL_NAME,
+                  MetricsTag.ACTIVITY_TYPE,
+                  MetricsTag.QUERY_TYPE,
+                  MetricsTag.EXCEPTION,
+                  MetricsTag.STATUS_CODE)
+              .map(tag -> "{" + tag + "}/")
+              .collect(Collectors.joining("", "", NAME)));
+
+  @EqualsAndHashCode.Include private final String pattern;
+  @EqualsAndHashCode.Include private final String placeholder;
+  /* literal segments as Strings, tag segments as TagSegment, the metric name as null */
+  private final Object[] segments;
+  private final int literalLength;
+
+  private MetricNameTemplate(
+      final String pattern, final String placeholder, final Object[] segments) {
+    this.pattern = pattern;
+    this.placeholder = placeholder;
+    this.segments = segments;
+    var length = 0;
+    for (final var segment : segments) {
+      length += segment instanceof String ? ((String) segment).length() : 16;
+    }
+    this.literalLength = length;
+  }
+
+  /**
+   * Compiles a template using {@value #DEFAULT_PLACEHOLDER} for missing tags.
+   *
+   * @param pattern template to compile
+   * @return the compiled template
+   * @throws IllegalArgumentException if placeholders are not balanced or {@value #NAME} is missing
+   */
+  public static MetricNameTemplate compile(@NonNull final String pattern) {
+    return compile(pattern, DEFAULT_PLACEHOLDER);
+  }
+
+  /**
+   * Compiles a template.
+   *
+   * @param pattern template to compile
+   * @param placeholder value used for missing tags
+   * @return the compiled template
+   * @throws IllegalArgumentException if placeholders are not balanced or {@value #NAME} is missing
+   */
+  public static MetricNameTemplate compile(
+      @NonNull final String pattern, @NonNull final String placeholder) {
+    final var segments = new ArrayList<>();
+    var hasName = false;
+    var start = 0;
+    while (start < pattern.length()) {
+      final var open = pattern.indexOf('{', start);
+      final var close = pattern.indexOf('}', start);
+      if (open < 0 && close < 0) {
+        segments.add(pattern.substring(start));
+        break;
+      }
+      if (open < 0 || (close >= 0 && close < open)) {
+        throw new IllegalArgumentException("Unbalanced '}' at " + close + " on " + pattern);
+      }
+      final var nested = pattern.indexOf('{', open + 1);
+      if (close < 0 || (nested >= 0 && nested < close)) {
+        throw new IllegalArgumentException("Unbalanced '{' at " + open + " on " + pattern);
+      }
+      if (open > start) {
+        segments.add(pattern.substring(start, open));
+      }
+      final var tag = pattern.substring(open + 1, close);
+      if (tag.isEmpty()) {
+        throw new IllegalArgumentException("Empty placeholder at " + open + " on " + pattern);
+      }
+      if (NAME.equals(pattern.substring(open, close + 1))) {
+        hasName = true;
+        segments.add(null);
+      } else {
+        segments.add(new TagSegment(tag));
+      }
+      start = close + 1;
+    }
+    if (!hasName) {
+      throw new IllegalArgumentException(NAME + " placeholder is missing on " + pattern);
+    }
+    return new MetricNameTemplate(pattern, placeholder, segments.toArray());
+  }
+
+  public String getPattern() {
+    return pattern;
+  }
+
+  public String getPlaceholder() {
+    return placeholder;
+  }
+
+  /**
+   * Formats a metric name.
+   *
+   * @param name metric name
+   * @param tags reported tags, may be null
+   * @return the formatted name
+   */
+  String format(final String name, final Map<String, String> tags) {
+    final var builder = new StringBuilder(literalLength + name.length());
+    for (final var segment : segments) {
+      if (segment == null) {
+        builder.append(name);
+      } else if (segment instanceof TagSegment) {
+        final var value = tags == null ? null : tags.get(((TagSegment) segment).tag);
+        builder.append(value == null ? placeholder : value);
+      } else {
+        builder.append((String) segment);
+      }
+    }
+    return builder.toString();
+  }
+
+  @Override
+  public String toString() {
+    return pattern;
+  }
+
+  private static final class TagSegment {
+    private final String tag;
+
+    private TagSegment(final String tag) {
+      this.tag = tag;
+    }
+  }
+}
@@ -0,0 +1,75 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import java.util.Set;
+
+/**
+ * Bounds how many distinct types (workflow, activity or signal names) and task queues the
+ * interceptors put into metric and segment names, so dynamic values can not explode the number of
+ * metrics. Both are limited by a {@link TagCardinalityLimiter}: the first {@link #getMaxTypes()}
+ * values of each seen are used as they come, and any other one is replaced by {@value #OTHER}, with
+ * how many distinct values were suppressed counted under {@value #SUPPRESSED_METRIC}{@code type} or
+ * {@value #SUPPRESSED_METRIC}{@code taskQueue}.
+ * <br>
+ * Metric names are global to the agent, so a single instance (see {@link #shared()}) is used by
+ * every interceptor.
+ */
+public final class MetricNames {
+
+  public static final String BASE = MetricScopeReporter.METRIC_BASE;
+  public static final String OTHER = TagCardinalityLimiter.OTHER;
+  public static final String UNKNOWN = "unknown";
+  static final String SUPPRESSED_METRIC = BASE + "interceptors/suppressed/";
+  static final String TYPE = "type";
+  static final String TASK_QUEUE = "taskQueue";
+  static final int DEFAULT_MAX_TYPES = 1_000;
+
+  private static final MetricNames SHARED = new MetricNames(DEFAULT_MAX_TYPES);
+
+  private final TagCardinalityLimiter limiter;
+
+  MetricNames(final int maxTypes) {
+    this.limiter = new TagCardinalityLimiter(SUPPRESSED_METRIC, Set.of(TYPE, TASK_QUEUE), maxTypes);
+  }
+
+  public static MetricNames shared() {
+    return SHARED;
+  }
+
+  public int getMaxTypes() {
+    return limiter.getMaxValuesPerTag();
+  }
+
+  /**
+   * Returns the type to put into metric names: the type itself while the limit allows it,
+   * otherwise {@value #OTHER}.
+   *
+   * @param type workflow, activity or signal name, {@value #UNKNOWN} if null
+   * @return type to use on metric names
+   */
+  public String type(final String type) {
+    return limit(TYPE, type);
+  }
+
+  /**
+   * Returns the task queue to put into metric names: the task queue itself while the limit allows
+   * it, otherwise {@value #OTHER}.
+   *
+   * @param taskQueue task queue name, {@value #UNKNOWN} if null
+   * @return task queue to use on metric names
+   */
+  public String taskQueue(final String taskQueue) {
+    return limit(TASK_QUEUE, taskQueue);
+  }
+
+  private String limit(final String tag, final String value) {
+    if (value == null) {
+      return UNKNOWN;
+    }
+    final var limited = limiter.limit(tag, value);
+    if (limited != value) {
+      // there is no reporting loop here, so newly suppressed values are reported right away
+      limiter.flush();
+    }
+    return limited;
+  }
+}
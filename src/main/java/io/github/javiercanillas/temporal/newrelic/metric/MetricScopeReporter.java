@@ -8,12 +8,13 @@ import com.uber.m3.tally.RootScopeBuilder;
 import com.uber.m3.tally.Scope;
 import com.uber.m3.tally.StatsReporter;
 import com.uber.m3.util.Duration;
-import io.temporal.serviceclient.MetricsTag;
+import io.github.javiercanillas.temporal.newrelic.BoundedCache;
+import lombok.NonNull;
 import lombok.extern.slf4j.Slf4j;
 
-import java.util.List;
+import java.util.Arrays;
+import java.util.Collections;
 import java.util.Map;
-import java.util.stream.Collectors;
 
 /**
  * Implementation of {@link StatsReporter} that sends data to log as TRACE entries and also reports
@@ -40,9 +41,38 @@ import java.util.stream.Collectors;
  *   <li>status_code
  * </ul>
  *
- * And finally, the metric name will be appended. <br>
+ * And finally, the metric name will be appended. Which tags appear, and in which order, can be
+ * changed per metric kind through {@link MetricNameTemplate}s on {@link
+ * MetricScopeReporterOptions}. <br>
  * <br>
- * <b>Histograms are not well supported on newrelic, so they will only be reported on logs.</b> <br>
+ * Compiled metric names are kept on a bounded cache keyed by metric kind, name and tags, so once
+ * every combination has been seen no more strings are built while reporting. <br>
+ * <br>
+ * To bound the number of metrics, when {@link MetricScopeReporterOptions#getTagCardinalityLimit()}
+ * is set, tags listed on {@link MetricScopeReporterOptions#getLimitedTags()} can only take that many
+ * distinct values, values beyond that are reported as {@code other} (see {@link
+ * TagCardinalityLimiter}). Names with suppressed values are only cached under their limited tags,
+ * so a flood of distinct values cannot evict the names in use. <br>
+ * <br>
+ * Histograms are not supported by NewRelic, so their samples are merged into fixed-bucket
+ * histograms and on every {@link #flush()} their percentiles are sent under {@code histogram} (see
+ * {@link HistogramAggregator}). <br>
+ * <br>
+ * When {@link MetricScopeReporterOptions#isAggregate()} is enabled, values are aggregated locally
+ * and sent to NewRelic once per metric on every {@link #flush()} (see {@link MetricAggregator}),
+ * instead of calling NewRelic agent API on every report. <br>
+ * <br>
+ * With {@link ReportingMode#EVENTS} values are always aggregated and sent as {@code
+ * TemporalMetric} custom events, with tags as attributes instead of being part of the metric name
+ * (see {@link CustomEventSink}). <br>
+ * <br>
+ * With {@link MetricScopeReporterOptions#isAsync()} reports are queued and handed over to NewRelic
+ * on a dedicated thread (see {@link AsyncStatsReporter}). <br>
+ * <br>
+ * Scopes are built through {@link #getScope(MetricScopeReporterOptions)}. By default a single scope
+ * is shared by the whole process, so there is only one tally reporting loop no matter how many
+ * clients or workers are configured with it. Call {@link #closeScope()} on shutdown to report
+ * pending metrics and stop that loop. <br>
  * <br>
  * For example:
  *
@@ -76,32 +106,86 @@ public final class MetricScopeReporter implements StatsReporter {
   protected static final String TIMER_METRIC = METRIC_BASE + "timer";
   protected static final String GAUGE_METRIC = METRIC_BASE + "gauge";
   protected static final String COUNTER_METRIC = METRIC_BASE + "counter";
+  protected static final String HISTOGRAM_METRIC = METRIC_BASE + "histogram";
   protected static final String ALL_NONE = "/none/none/none/none/none/none/none/none/none/none/";
   protected static final String NONE = "none";
+  protected static final int DEFAULT_NAME_CACHE_SIZE = 10_000;
 
-  private static final MetricScopeReporter INSTANCE = new MetricScopeReporter();
+  private static final MetricScopeReporter INSTANCE =
+      new MetricScopeReporter(MetricScopeReporterOptions.getDefaultInstance());
 
-  private MetricScopeReporter() {
-    // to avoid instantiation
+  private static final Object SHARED_SCOPE_LOCK = new Object();
+  private static Scope sharedScope;
+  private static MetricScopeReporterOptions sharedScopeOptions;
+
+  private final BoundedCache<MetricKey, MetricId> names;
+  /* names of reported tags with suppressed values, apart so a flood of them can not evict names */
+  private final BoundedCache<MetricKey, MetricId> suppressedNames;
+  private final MetricSink sink;
+  private final MetricAggregator aggregator;
+  private final HistogramAggregator histograms = new HistogramAggregator();
+  private final TagCardinalityLimiter limiter;
+  private final MetricNameTemplate[] templates = new MetricNameTemplate[MetricKind.values().length];
+  private final boolean aggregateByKey;
+
+  MetricScopeReporter(final MetricScopeReporterOptions options) {
+    this.names = new BoundedCache<>(options.getNameCacheSize());
+    this.suppressedNames = new BoundedCache<>(options.getNameCacheSize());
+    this.limiter =
+        options.getTagCardinalityLimit() > 0 && !options.getLimitedTags().isEmpty()
+            ? new TagCardinalityLimiter(
+                options.getLimitedTags(), options.getTagCardinalityLimit())
+            : null;
+    this.aggregateByKey = options.getReportingMode() == ReportingMode.EVENTS;
+    if (aggregateByKey) {
+      // tags are sent as event attributes, names are only used on logs
+      Arrays.fill(templates, MetricNameTemplate.DEFAULT);
+    } else {
+      templates[MetricKind.COUNTER.ordinal()] = options.getCounterNameTemplate();
+      templates[MetricKind.GAUGE.ordinal()] = options.getGaugeNameTemplate();
+      templates[MetricKind.TIMER.ordinal()] = options.getTimerNameTemplate();
+      templates[MetricKind.HISTOGRAM.ordinal()] = options.getHistogramNameTemplate();
+    }
+    if (aggregateByKey) {
+      this.sink = new CustomEventSink(options.getEventBufferSize(), options.getMaxEventsPerFlush());
+      this.aggregator = new MetricAggregator();
+    } else {
+      this.sink = new CustomMetricSink();
+      this.aggregator = options.isAggregate() ? new MetricAggregator() : null;
+    }
   }
 
   @Override
   public void reportCounter(final String name, final Map<String, String> tags, final long value) {
-    NewRelic.incrementCounter(COUNTER_METRIC + buildPathFromTags(tags) + name, (int) value);
+    final var id = metricId(MetricKind.COUNTER, name, tags);
+    if (aggregator != null) {
+      aggregator.addCounter(id, value);
+    } else {
+      incrementCounter(id.getPath(), value);
+    }
     log.trace("[Counter {}: {} | tags: {}]", name, value, tags);
   }
 
   @Override
   public void reportGauge(final String name, final Map<String, String> tags, final double value) {
-    NewRelic.recordMetric(GAUGE_METRIC + buildPathFromTags(tags) + name, (float) value);
+    final var id = metricId(MetricKind.GAUGE, name, tags);
+    if (aggregator != null) {
+      aggregator.setGauge(id, value);
+    } else {
+      NewRelic.recordMetric(id.getPath(), (float) value);
+    }
     log.trace("[Gauge: {}: {} | tags: {}]", name, value, tags);
   }
 
   @Override
   public void reportTimer(
       final String name, final Map<String, String> tags, final Duration interval) {
-    NewRelic.recordResponseTimeMetric(
-        TIMER_METRIC + buildPathFromTags(tags) + name, interval.toMillis());
+    final var id = metricId(MetricKind.TIMER, name, tags);
+    if (aggregator != null) {
+      aggregator.recordTimer(id, interval.getNanos());
+    } else {
+      NewRelic.recordResponseTimeMetric(id.getPath(), interval.toMillis());
+    }
     log.trace("[Timer: {}: {}ms | tags: {}]", name, interval.toMillis(), tags);
   }
 
@@ -114,6 +198,8 @@ public final class MetricScopeReporter implements StatsReporter {
       final double bucketLowerBound,
       final double bucketUpperBound,
       final long samples) {
+    final var value = bucketUpperBound == Double.MAX_VALUE ? bucketLowerBound : bucketUpperBound;
+    histograms.record(metricId(MetricKind.HISTOGRAM, name, tags), value, samples);
     log.trace(
         "[Histogram: {}: { lower:{}, upper:{}, samples: {}} | tags: {}]",
         name,
@@ -132,6 +218,10 @@ public final class MetricScopeReporter implements StatsReporter {
       final Duration bucketLowerBound,
       final Duration bucketUpperBound,
       final long samples) {
+    final var value =
+        Duration.MAX_VALUE.equals(bucketUpperBound) ? bucketLowerBound : bucketUpperBound;
+    histograms.record(
+        metricId(MetricKind.HISTOGRAM, name, tags), value.getNanos() / 1_000_000d, samples);
     log.trace(
         "[Histogram (ms): {}: { lower: {}, upper: {}, samples: {}} | tags: {}]",
         name,
@@ -146,11 +236,27 @@ public final class MetricScopeReporter implements StatsReporter {
     return CapableOf.REPORTING;
   }
 
+  /**
+   * Sends histogram percentiles, and aggregated values when aggregation is enabled, to NewRelic.
+   * Otherwise every report was already sent as soon as it arrived. Also reports how many tag values
+   * were suppressed by the cardinality limit. Tally calls this after each reporting loop iteration.
+   */
   @Override
   public void flush() {
-    // DO NOTHING
+    if (aggregator != null) {
+      aggregator.flush(sink);
+    }
+    histograms.flush(sink);
+    sink.flush();
+    if (limiter != null) {
+      limiter.flush();
+    }
   }
 
+  /**
+   * Called by tally once the scope is closed, after a last report and flush, so there is nothing
+   * left to release.
+   */
   @Override
   public void close() {
     // DO NOTHING
@@ -160,27 +266,143 @@ public final class MetricScopeReporter implements StatsReporter {
     return INSTANCE;
   }
 
+  /**
+   * Returns the process wide scope, built with default options if it does not exist yet.
+   *
+   * @return the shared scope
+   */
   public static Scope getScope() {
-    return new RootScopeBuilder().reporter(instance()).reportEvery(Duration.ofMillis(1));
+    return getScope(MetricScopeReporterOptions.getDefaultInstance());
   }
 
-  private String buildPathFromTags(final Map<String, String> tags) {
-    if (tags == null || tags.isEmpty()) {
-      return ALL_NONE;
-    } else {
-      return List.of(
-              tags.getOrDefault(MetricsTag.NAMESPACE, NONE),
-              tags.getOrDefault(MetricsTag.WORKER_TYPE, NONE),
-              tags.getOrDefault(MetricsTag.TASK_QUEUE, NONE),
-              tags.getOrDefault(MetricsTag.WORKFLOW_TYPE, NONE),
-              tags.getOrDefault(MetricsTag.OPERATION_NAME, NONE),
-              tags.getOrDefault(MetricsTag.SIGNAL_NAME, NONE),
-              tags.getOrDefault(MetricsTag.ACTIVITY_TYPE, NONE),
-              tags.getOrDefault(MetricsTag.QUERY_TYPE, NONE),
-              tags.getOrDefault(MetricsTag.EXCEPTION, NONE),
-              tags.getOrDefault(MetricsTag.STATUS_CODE, NONE))
-          .stream()
-          .collect(Collectors.joining("/", "/", "/"));
+  /**
+   * Returns a scope reporting to NewRelic. If the options are {@link
+   * MetricScopeReporterOptions#isShared()} the process wide scope is returned, building it with the
+   * given options if it does not exist yet; otherwise a new scope is built and the caller is in
+   * charge of closing it.
+   *
+   * @param options a non-null options instance
+   * @return a scope reporting to NewRelic
+   */
+  public static Scope getScope(@NonNull final MetricScopeReporterOptions options) {
+    if (!options.isShared()) {
+      return newScope(options);
+    }
+    synchronized (SHARED_SCOPE_LOCK) {
+      if (sharedScope == null) {
+        sharedScope = newScope(options);
+        sharedScopeOptions = options;
+      } else if (!sharedScopeOptions.equals(options)) {
+        log.warn(
+            "Shared scope was already built with {}, ignoring {}", sharedScopeOptions, options);
+      }
+      return sharedScope;
     }
   }
+
+  /**
+   * Closes the process wide scope, if any. Tally reports pending metrics one last time and stops
+   * its reporting loop. A later call to {@link #getScope()} will build a new one.
+   */
+  public static void closeScope() {
+    final Scope scope;
+    synchronized (SHARED_SCOPE_LOCK) {
+      scope = sharedScope;
+      sharedScope = null;
+      sharedScopeOptions = null;
+    }
+    if (scope != null) {
+      try {
+        scope.close();
+      } catch (Exception e) {
+        log.warn("Error while closing shared scope", e);
+      }
+    }
+  }
+
+  private static Scope newScope(final MetricScopeReporterOptions options) {
+    final StatsReporter reporter =
+        MetricScopeReporterOptions.getDefaultInstance().equals(options)
+            ? INSTANCE
+            : new MetricScopeReporter(options);
+    return new RootScopeBuilder()
+        .reporter(
+            options.isAsync()
+                ? new AsyncStatsReporter(
+                    reporter, options.getAsyncQueueSize(), options.getOverflowPolicy())
+                : reporter)
+        .prefix(options.getPrefix())
+        .reportEvery(Duration.ofMillis(options.getReportInterval().toMillis()));
+  }
+
+  /**
+   * Gives access to the compiled metric names cache, mostly to check its hit, miss and eviction
+   * counters.
+   *
+   * @return the cache holding compiled metric names
+   */
+  BoundedCache<MetricKey, MetricId> getNameCache() {
+    return names;
+  }
+
+  BoundedCache<MetricKey, MetricId> getSuppressedNameCache() {
+    return suppressedNames;
+  }
+
+  /**
+   * NewRelic counters only accept int increments, so bigger values are sent in several chunks
+   * instead of being truncated.
+   */
+  static void incrementCounter(final String metricName, final long value) {
+    var remaining = value;
+    do {
+      final var chunk = (int) Math.max(Integer.MIN_VALUE, Math.min(Integer.MAX_VALUE, remaining));
+      NewRelic.incrementCounter(metricName, chunk);
+      remaining -= chunk;
+    } while (remaining != 0);
+  }
+
+  private MetricId metricId(
+      final MetricKind kind, final String name, final Map<String, String> tags) {
+    final var key = new MetricKey(kind, name, tags);
+    final var cached = names.getIfPresent(key);
+    if (cached != null) {
+      return cached;
+    }
+    if (limiter == null) {
+      final var retainable = key.retainable();
+      return names.put(retainable, newMetricId(retainable));
+    }
+    final var cachedSuppressed = suppressedNames.getIfPresent(key);
+    if (cachedSuppressed != null) {
+      return cachedSuppressed;
+    }
+    final var limitedTags = limiter.limit(key.getTags());
+    if (limitedTags == key.getTags()) {
+      final var retainable = key.retainable();
+      return names.put(retainable, newMetricId(retainable));
+    }
+    // limitedTags is a copy of our own, so it can be retained as is
+    final var limited = new MetricKey(kind, name, Collections.unmodifiableMap(limitedTags));
+    var id = names.getIfPresent(limited);
+    if (id == null) {
+      id = names.put(limited, newMetricId(limited));
+    }
+    // suppressed values stay suppressed, so the limiter is not asked again for these tags
+    return suppressedNames.put(key.retainable(), id);
+  }
+
+  private MetricId newMetricId(final MetricKey key) {
+    final var path = compileName(key);
+    return new MetricId(key, path, aggregateByKey ? key : path);
+  }
+
+  private String compileName(final MetricKey key) {
+    final var template = templates[key.getKind().ordinal()];
+    return (METRIC_BASE
+            + key.getKind().getSegment()
+            + "/"
+            + template.format(key.getName(), key.getTags()))
+        .intern();
+  }
 }
@@ -0,0 +1,112 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import io.temporal.serviceclient.MetricsTag;
+import lombok.Builder;
+import lombok.NonNull;
+import lombok.Value;
+
+import java.time.Duration;
+import java.util.Set;
+
+/**
+ * Options used to build a {@link com.uber.m3.tally.Scope} backed by {@link MetricScopeReporter}.
+ * How to use it:
+ *
+ * <pre>{@code
+ * var options = MetricScopeReporterOptions.builder()
+ *     .reportInterval(Duration.ofSeconds(30))
+ *     .build();
+ * var scope = MetricScopeReporter.getScope(options);
+ * }</pre>
+ */
+@Value
+@Builder(toBuilder = true)
+public class MetricScopeReporterOptions {
+
+  /** Aligned with NewRelic agent harvest cycle. */
+  public static final Duration DEFAULT_REPORT_INTERVAL = Duration.ofSeconds(60);
+
+  /**
+   * Tags whose values depend on user code or data, so they are the ones limited once {@link
+   * #getTagCardinalityLimit()} is set.
+   */
+  public static final Set<String> DEFAULT_LIMITED_TAGS =
+      Set.of(MetricsTag.EXCEPTION, MetricsTag.WORKFLOW_TYPE, MetricsTag.ACTIVITY_TYPE);
+
+  private static final MetricScopeReporterOptions DEFAULT_INSTANCE = builder().build();
+
+  /** How often tally reports its metrics to {@link MetricScopeReporter}. */
+  @NonNull @Builder.Default Duration reportInterval = DEFAULT_REPORT_INTERVAL;
+
+  /** Prefix tally adds to every metric name of the scope, none by default. */
+  @NonNull @Builder.Default String prefix = "";
+
+  /**
+   * Whether {@link MetricScopeReporter#getScope(MetricScopeReporterOptions)} returns the process
+   * wide shared scope (default) or a new one owned by the caller.
+   */
+  @Builder.Default boolean shared = true;
+
+  /**
+   * Whether values are aggregated locally and sent once per metric on every flush, instead of
+   * calling NewRelic agent API on every report. Disabled by default, as it changes what NewRelic
+   * sees: timers become a single mean per interval with their count on a {@code /count} metric,
+   * and values are delayed up to one report interval. Always enabled on {@link
+   * ReportingMode#EVENTS} mode.
+   */
+  @Builder.Default boolean aggregate = false;
+
+  /** How values are sent to NewRelic, as custom metrics by default. */
+  @NonNull @Builder.Default ReportingMode reportingMode = ReportingMode.METRICS;
+
+  /**
+   * Maximum number of events kept between flushes on {@link ReportingMode#EVENTS} mode, those that
+   * do not fit are dropped.
+   */
+  @Builder.Default int eventBufferSize = 10_000;
+
+  /**
+   * Maximum number of events recorded on every report interval on {@link ReportingMode#EVENTS}
+   * mode, the rest are kept buffered for the next ones.
+   */
+  @Builder.Default int maxEventsPerFlush = 5_000;
+
+  /**
+   * Whether reports are handed over to NewRelic on a dedicated thread instead of the thread tally
+   * or Temporal report on (see {@link AsyncStatsReporter}). Disabled by default.
+   */
+  @Builder.Default boolean async = false;
+
+  /** Maximum number of reports waiting for the dedicated thread on async mode. */
+  @Builder.Default int asyncQueueSize = 8_192;
+
+  /** What to do with reports when the queue is full on async mode, drop them by default. */
+  @NonNull @Builder.Default OverflowPolicy overflowPolicy = OverflowPolicy.DROP_NEWEST;
+
+  /** How counter names are built, with every Temporal tag by default. */
+  @NonNull @Builder.Default MetricNameTemplate counterNameTemplate = MetricNameTemplate.DEFAULT;
+
+  /** How gauge names are built, with every Temporal tag by default. */
+  @NonNull @Builder.Default MetricNameTemplate gaugeNameTemplate = MetricNameTemplate.DEFAULT;
+
+  /** How timer names are built, with every Temporal tag by default. */
+  @NonNull @Builder.Default MetricNameTemplate timerNameTemplate = MetricNameTemplate.DEFAULT;
+
+  /** How histogram names are built, with every Temporal tag by default. */
+  @NonNull @Builder.Default MetricNameTemplate histogramNameTemplate = MetricNameTemplate.DEFAULT;
+
+  /** Maximum number of compiled metric names to keep. */
+  @Builder.Default int nameCacheSize = MetricScopeReporter.DEFAULT_NAME_CACHE_SIZE;
+
+  /** Tags with a limited number of distinct values, values beyond it become {@code other}. */
+  @NonNull @Builder.Default Set<String> limitedTags = DEFAULT_LIMITED_TAGS;
+
+  /**
+   * Maximum number of distinct values every limited tag can take, 0 (default) disables the limit.
+   */
+  @Builder.Default int tagCardinalityLimit = 0;
+
+  public static MetricScopeReporterOptions getDefaultInstance() {
+    return DEFAULT_INSTANCE;
+  }
+}
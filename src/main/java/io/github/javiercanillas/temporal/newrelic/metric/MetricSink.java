@@ -0,0 +1,27 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+/**
+ * Destination of values aggregated by {@link MetricAggregator} and {@link HistogramAggregator}.
+ * Every method is called at most once per metric per flush.
+ */
+interface MetricSink {
+
+  void counter(MetricId id, long value);
+
+  void gauge(MetricId id, double value);
+
+  /**
+   * @param count number of recorded durations
+   * @param totalNanos sum of recorded durations
+   * @param minNanos shortest recorded duration
+   * @param maxNanos longest recorded duration
+   */
+  void timer(MetricId id, long count, long totalNanos, long minNanos, long maxNanos);
+
+  void histogram(MetricId id, long count, double p50, double p90, double p99, double max);
+
+  /** Called once every aggregated value has been handed over. */
+  default void flush() {
+    // nothing buffered by default
+  }
+}
@@ -0,0 +1,11 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+/** What an asynchronous reporter does with a report when its queue is full. */
+public enum OverflowPolicy {
+  /** The new report is dropped, the reporting thread never waits. */
+  DROP_NEWEST,
+  /** The oldest queued report is dropped to make room for the new one. */
+  DROP_OLDEST,
+  /** The reporting thread waits until there is room on the queue. */
+  BLOCK
+}
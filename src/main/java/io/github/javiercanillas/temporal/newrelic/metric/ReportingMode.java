@@ -0,0 +1,15 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+/** How {@link MetricScopeReporter} sends values to NewRelic. */
+public enum ReportingMode {
+  /**
+   * As custom metrics, with every tag encoded on the metric name, like {@code
+   * Custom/temporalio/counter/namespace/.../name}.
+   */
+  METRICS,
+  /**
+   * As aggregated {@code TemporalMetric} custom events, one per metric per report interval, with
+   * tags as event attributes so they can be faceted.
+   */
+  EVENTS
+}
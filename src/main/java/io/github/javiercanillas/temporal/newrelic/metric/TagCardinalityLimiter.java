@@ -0,0 +1,164 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import io.github.javiercanillas.temporal.newrelic.BoundedCache;
+import lombok.extern.slf4j.Slf4j;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounds how many distinct values every limited tag can take. The first values seen for a tag are
+ * accepted as they come, and once {@link #getMaxValuesPerTag()} of them were accepted any other
+ * value is replaced by {@value #OTHER}, so a dynamic workflow type or a noisy exception cannot
+ * explode the number of metrics.
+ *
+ * Distinct suppressed values are counted per tag and, on {@link #flush()}, reported under {@value
+ * #SUPPRESSED_METRIC}{@code <tag>} (or the prefix given on construction). Suppressed values are
+ * remembered on a bounded cache, so when there are many of them some may be counted more than
+ * once. Values already accepted are looked up without locking. <br>
+ * <br>
+ * Tags are limited when metric names are compiled, which only happens on name cache misses.
+ */
+@Slf4j
+final class TagCardinalityLimiter {
+
+  static final String OTHER = "other";
+  static final String SUPPRESSED_METRIC =
+      MetricScopeReporter.METRIC_BASE + "reporter/tags/suppressed/";
+
+  private static final int SUPPRESSED_VALUES_TRACKED = 1_000;
+
+  private final Map<String, TagValues> limited;
+  private final int maxValuesPerTag;
+  private final String suppressedMetric;
+
+  /**
+   * Builds a limiter reporting suppressed values under {@value #SUPPRESSED_METRIC}{@code <tag>}.
+   *
+   * @param tags names of the tags to limit, other tags are never limited
+   * @param maxValuesPerTag how many distinct values each of those tags can take
+   */
+  TagCardinalityLimiter(final Set<String> tags, final int maxValuesPerTag) {
+    this(SUPPRESSED_METRIC, tags, maxValuesPerTag);
+  }
+
+  /**
+   * Builds a limiter.
+   *
+   * @param suppressedMetric prefix of the metrics counting suppressed values, followed by the tag
+   * @param tags names of the tags to limit, other tags are never limited
+   * @param maxValuesPerTag how many distinct values each of those tags can take
+   */
+  TagCardinalityLimiter(
+      final String suppressedMetric, final Set<String> tags, final int maxValuesPerTag) {
+    if (maxValuesPerTag <= 0) {
+      throw new IllegalArgumentException("maxValuesPerTag must be positive: " + maxValuesPerTag);
+    }
+    this.maxValuesPerTag = maxValuesPerTag;
+    this.suppressedMetric = suppressedMetric;
+    final var values = new HashMap<String, TagValues>();
+    tags.forEach(tag -> values.put(tag, new TagValues(tag)));
+    this.limited = Collections.unmodifiableMap(values);
+  }
+
+  int getMaxValuesPerTag() {
+    return maxValuesPerTag;
+  }
+
+  /**
+   * Replaces tag values beyond the limit by {@value #OTHER}.
+   *
+   * @param tags reported tags, not modified
+   * @return the same tags when every value was accepted, otherwise a copy with suppressed values
+   *     replaced
+   */
+  Map<String, String> limit(final Map<String, String> tags) {
+    Map<String, String> result = tags;
+    for (final var entry : tags.entrySet()) {
+      final var values = limited.get(entry.getKey());
+      if (values != null && !values.accept(entry.getValue())) {
+        if (result == tags) {
+          result = new HashMap<>(tags);
+        }
+        result.put(entry.getKey(), OTHER);
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Replaces a single tag value beyond the limit by {@value #OTHER}.
+   *
+   * @param tag tag name
+   * @param value reported value
+   * @return the value when accepted or the tag is not limited, otherwise {@value #OTHER}
+   */
+  String limit(final String tag, final String value) {
+    final var values = limited.get(tag);
+    return values == null || values.accept(value) ? value : OTHER;
+  }
+
+  /**
+   * Number of distinct values suppressed for a tag since the previous flush.
+   *
+   * @param tag tag name
+   * @return suppressed values, 0 if the tag is not limited
+   */
+  long getSuppressed(final String tag) {
+    final var values = limited.get(tag);
+    return values == null ? 0L : values.suppressed.sum();
+  }
+
+  /** Reports how many distinct values were suppressed for every tag since the previous flush. */
+  void flush() {
+    limited.forEach(
+        (tag, values) -> {
+          final var suppressed = values.suppressed.sumThenReset();
+          if (suppressed > 0) {
+            MetricScopeReporter.incrementCounter(suppressedMetric + tag, suppressed);
+          }
+        });
+  }
+
+  private final class TagValues {
+    private final String tag;
+    private final Set<String> accepted = ConcurrentHashMap.newKeySet();
+    private final BoundedCache<String, Boolean> suppressedValues =
+        new BoundedCache<>(SUPPRESSED_VALUES_TRACKED);
+    private final LongAdder suppressed = new LongAdder();
+
+    private TagValues(final String tag) {
+      this.tag = tag;
+    }
+
+    private boolean accept(final String value) {
+      return value == null || accepted.contains(value) || acceptNew(value);
+    }
+
+    private synchronized boolean acceptNew(final String value) {
+      if (accepted.contains(value)) {
+        return true;
+      }
+      if (accepted.size() < maxValuesPerTag) {
+        accepted.add(value);
+        if (accepted.size() == maxValuesPerTag) {
+          log.warn(
+              "Tag {} reached {} distinct values, new ones will be reported as {}",
+              tag,
+              maxValuesPerTag,
+              OTHER);
+        }
+        return true;
+      }
+      if (suppressedValues.getIfPresent(value) == null) {
+        suppressedValues.put(value, Boolean.TRUE);
+        suppressed.increment();
+      }
+      return false;
+    }
+  }
+}
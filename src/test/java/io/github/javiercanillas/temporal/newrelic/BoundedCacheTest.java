@@ -0,0 +1,55 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+class BoundedCacheTest {
+
+  @Test
+  void constructor() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new BoundedCache<>(0));
+  }
+
+  @Test
+  void get() {
+    var cache = new BoundedCache<String, String>(10);
+    Assertions.assertEquals("KEY", cache.get("key", String::toUpperCase));
+    Assertions.assertEquals("KEY", cache.get("key", k -> Assertions.fail("should be cached")));
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals(1, cache.getMisses());
+    Assertions.assertEquals(0, cache.getEvictions());
+    Assertions.assertEquals(1, cache.size());
+  }
+
+  @Test
+  void getIfPresent() {
+    var cache = new BoundedCache<String, String>(10);
+    Assertions.assertNull(cache.getIfPresent("key"));
+    cache.put("key", "value");
+    Assertions.assertEquals("value", cache.getIfPresent("key"));
+    Assertions.assertEquals(1, cache.getHits());
+    Assertions.assertEquals(1, cache.getMisses());
+  }
+
+  @Test
+  void put_keepsPreviousValue() {
+    var cache = new BoundedCache<String, String>(10);
+    Assertions.assertEquals("first", cache.put("key", "first"));
+    Assertions.assertEquals("first", cache.put("key", "second"));
+  }
+
+  @Test
+  void put_evictsWhenFull() {
+    var cache = new BoundedCache<Integer, Integer>(3);
+    for (int i = 0; i < 10; i++) {
+      cache.put(i, i);
+    }
+    Assertions.assertEquals(3, cache.size());
+    Assertions.assertEquals(7, cache.getEvictions());
+    Assertions.assertEquals(9, cache.getIfPresent(9));
+
+    cache.clear();
+    Assertions.assertEquals(0, cache.size());
+    Assertions.assertEquals(7, cache.getEvictions());
+  }
+}
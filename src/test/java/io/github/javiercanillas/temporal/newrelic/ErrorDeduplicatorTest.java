@@ -0,0 +1,83 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import com.newrelic.api.agent.NewRelic;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLong;
+
+class ErrorDeduplicatorTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private ErrorDeduplicator deduplicator(final int maxErrorsPerWindow) {
+    // only the frame where errors are created counts, so callers do not change the fingerprint
+    return new ErrorDeduplicator(maxErrorsPerWindow, Duration.ofSeconds(60), 1, 100, now::get);
+  }
+
+  private static RuntimeException error() {
+    return new IllegalStateException("failed");
+  }
+
+  @Test
+  void shouldReport() {
+    final var deduplicator = deduplicator(2);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertTrue(deduplicator.shouldReport(error(), "type"));
+      Assertions.assertTrue(deduplicator.shouldReport(error(), "type"));
+      Assertions.assertFalse(deduplicator.shouldReport(error(), "type"));
+      Assertions.assertFalse(deduplicator.shouldReport(error(), "type"));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(ErrorDeduplicator.SUPPRESSED_METRIC + "type"),
+          Mockito.times(2));
+
+      // other types, classes and frames are other fingerprints
+      Assertions.assertTrue(deduplicator.shouldReport(error(), "otherType"));
+      Assertions.assertTrue(deduplicator.shouldReport(new IllegalArgumentException(), "type"));
+      Assertions.assertTrue(deduplicator.shouldReport(new IllegalStateException(), "type"));
+    }
+  }
+
+  @Test
+  void shouldReport_nextWindow() {
+    final var deduplicator = deduplicator(1);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertTrue(deduplicator.shouldReport(error(), "type"));
+      now.addAndGet(Duration.ofSeconds(59).toNanos());
+      Assertions.assertFalse(deduplicator.shouldReport(error(), "type"));
+      now.addAndGet(Duration.ofSeconds(1).toNanos());
+      Assertions.assertTrue(deduplicator.shouldReport(error(), "type"));
+      Assertions.assertFalse(deduplicator.shouldReport(error(), "type"));
+    }
+  }
+
+  @Test
+  void shouldReport_disabled() {
+    final var deduplicator = ErrorDeduplicator.disabled();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      for (int i = 0; i < 100; i++) {
+        Assertions.assertTrue(deduplicator.shouldReport(error(), "type"));
+      }
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(ArgumentMatchers.anyString()), Mockito.never());
+    }
+  }
+
+  @Test
+  void builder() {
+    final var deduplicator =
+        ErrorDeduplicator.builder().maxErrorsPerWindow(1).window(Duration.ofSeconds(1)).build();
+    Assertions.assertEquals(1, deduplicator.getMaxErrorsPerWindow());
+    Assertions.assertEquals(Duration.ofSeconds(1), deduplicator.getWindow());
+    Assertions.assertEquals(ErrorDeduplicator.DEFAULT_STACK_FRAMES, deduplicator.getStackFrames());
+    Assertions.assertEquals(
+        ErrorDeduplicator.DEFAULT_MAX_FINGERPRINTS, deduplicator.getMaxFingerprints());
+    Assertions.assertEquals(deduplicator, deduplicator.toBuilder().build());
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> ErrorDeduplicator.builder().window(Duration.ZERO).build());
+  }
+}
@@ -0,0 +1,159 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+class ExceptionAttributeExtractorTest {
+
+  @Test
+  void extract_default() {
+    Assertions.assertEquals(
+        Map.of(
+            "getCode", "ORDER",
+            "getLines", 3,
+            "isRetryable", true,
+            "getUnit", "SECONDS",
+            "getInitial", "o"),
+        ExceptionAttributeExtractor.getDefaultInstance().extract(new OrderException()));
+  }
+
+  @Test
+  void extract_notScalar() {
+    final var extractor = ExceptionAttributeExtractor.builder().scalarOnly(false).build();
+    final var attributes = extractor.extract(new OrderException());
+    Assertions.assertEquals("[1, 2, 3]", attributes.get("getLineIds"));
+    Assertions.assertEquals(6, attributes.size());
+  }
+
+  @Test
+  void extract_maxAttributes() {
+    final var extractor = ExceptionAttributeExtractor.builder().maxAttributes(2).build();
+    Assertions.assertEquals(2, extractor.extract(new OrderException()).size());
+  }
+
+  @Test
+  void extract_maxValueLength() {
+    final var extractor = ExceptionAttributeExtractor.builder().maxValueLength(2).build();
+    final var attributes = extractor.extract(new OrderException());
+    Assertions.assertEquals("OR", attributes.get("getCode"));
+    Assertions.assertEquals("SE", attributes.get("getUnit"));
+    Assertions.assertEquals(3, attributes.get("getLines"));
+
+    final var surrogates = ExceptionAttributeExtractor.builder().maxValueLength(2).build();
+    Assertions.assertEquals(
+        "a", surrogates.extract(new CodeException("a😀")).get("getCode"));
+  }
+
+  @Test
+  void extract_allowedAndDenied() {
+    final var allowed =
+        ExceptionAttributeExtractor.builder()
+            .allowedGetter(OrderException.class, Set.of("getCode", "getLines"))
+            .build();
+    Assertions.assertEquals(
+        Map.of("getCode", "ORDER", "getLines", 3), allowed.extract(new OrderException()));
+    // does not apply to other classes
+    Assertions.assertEquals(
+        Map.of("getCode", "code"), allowed.extract(new CodeException("code")));
+
+    final var denied =
+        ExceptionAttributeExtractor.builder()
+            .deniedGetter(RuntimeException.class, Set.of("getCode"))
+            .deniedGetter(OrderException.class, Set.of("getLines", "isRetryable"))
+            .build();
+    Assertions.assertEquals(
+        Map.of("getUnit", "SECONDS", "getInitial", "o"), denied.extract(new OrderException()));
+    Assertions.assertEquals(Map.of(), denied.extract(new CodeException("code")));
+  }
+
+  @Test
+  void extract_causes() {
+    final var extractor = ExceptionAttributeExtractor.builder().maxCauseDepth(2).build();
+    final var exception =
+        new CodeException("first", new CodeException("second", new CodeException("third")));
+    Assertions.assertEquals(
+        Map.of(
+            "getCode", "first",
+            "cause1.class", CodeException.class.getName(),
+            "cause1.getCode", "second",
+            "cause2.class", CodeException.class.getName(),
+            "cause2.getCode", "third"),
+        extractor.extract(exception));
+
+    Assertions.assertEquals(
+        Map.of("getCode", "first"),
+        ExceptionAttributeExtractor.getDefaultInstance().extract(exception));
+  }
+
+  @Test
+  void extract_causeCycle() {
+    final var extractor = ExceptionAttributeExtractor.builder().maxCauseDepth(10).build();
+    final var first = new CodeException("first");
+    final var second = new CodeException("second", first);
+    first.initCause(second);
+    Assertions.assertEquals(
+        Map.of(
+            "getCode", "first",
+            "cause1.class", CodeException.class.getName(),
+            "cause1.getCode", "second"),
+        extractor.extract(first));
+  }
+
+  @Test
+  void equalsAndHashCode() {
+    Assertions.assertEquals(
+        ExceptionAttributeExtractor.builder().maxCauseDepth(1).build(),
+        ExceptionAttributeExtractor.builder().maxCauseDepth(1).build());
+    Assertions.assertEquals(
+        ExceptionAttributeExtractor.getDefaultInstance().hashCode(),
+        ExceptionAttributeExtractor.builder().build().hashCode());
+  }
+
+  public static class OrderException extends RuntimeException {
+    public String getCode() {
+      return "ORDER";
+    }
+
+    public int getLines() {
+      return 3;
+    }
+
+    public boolean isRetryable() {
+      return true;
+    }
+
+    public TimeUnit getUnit() {
+      return TimeUnit.SECONDS;
+    }
+
+    public char getInitial() {
+      return 'o';
+    }
+
+    public List<Integer> getLineIds() {
+      return List.of(1, 2, 3);
+    }
+  }
+
+  public static class CodeException extends RuntimeException {
+    private final String code;
+
+    public CodeException(final String code) {
+      this.code = code;
+    }
+
+    public CodeException(final String code, final Throwable cause) {
+      super(cause);
+      this.code = code;
+    }
+
+    public String getCode() {
+      return code;
+    }
+  }
+}
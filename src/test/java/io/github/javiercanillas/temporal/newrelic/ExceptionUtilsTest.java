@@ -7,7 +7,10 @@ import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
 
 import java.util.Collections;
+import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 class ExceptionUtilsTest {
@@ -75,9 +78,66 @@ class ExceptionUtilsTest {
             Map.of("getDescription", "hello")));
   }
 
+  @Test
+  void testStaticAndInheritedGetters() {
+    Assertions.assertEquals(
+        Map.of("getCode", "CHILD", "getParentValue", 1, "getStaticValue", "static"),
+        ExceptionUtils.retrieveAdditionalData(new ChildException()));
+  }
+
+  @Test
+  void testValuesReturnedAsIs() {
+    final var value = List.of("a", "b");
+    final var description = "d".repeat(ExceptionAttributeExtractor.DEFAULT_MAX_VALUE_LENGTH + 1);
+    final var exception =
+        new RuntimeException() {
+          public List<String> getValue() {
+            return value;
+          }
+
+          public String getDescription() {
+            return description;
+          }
+        };
+    Assertions.assertEquals(
+        Map.of("getValue", value, "getDescription", description),
+        ExceptionUtils.retrieveAdditionalData(exception));
+  }
+
+  @Test
+  void testGettersResolvedOnce() {
+    final var getters = ExceptionUtils.getters(ChildException.class);
+    Assertions.assertSame(getters, ExceptionUtils.getters(ChildException.class));
+    Assertions.assertEquals(
+        Set.of("getCode", "getParentValue", "getStaticValue"),
+        getters.stream().map(ExceptionUtils.Getter::getName).collect(Collectors.toSet()));
+    Assertions.assertEquals(List.of(), ExceptionUtils.getters(IllegalStateException.class));
+  }
+
   @MethodSource("testArgs")
   @ParameterizedTest
   void test(final Exception ex, final Map<String, Object> expectedMap) {
     Assertions.assertEquals(expectedMap, ExceptionUtils.retrieveAdditionalData(ex));
   }
+
+  public static class ParentException extends RuntimeException {
+    public String getCode() {
+      return "PARENT";
+    }
+
+    public int getParentValue() {
+      return 1;
+    }
+
+    public static String getStaticValue() {
+      return "static";
+    }
+  }
+
+  public static class ChildException extends ParentException {
+    @Override
+    public String getCode() {
+      return "CHILD";
+    }
+  }
 }
@@ -0,0 +1,97 @@
+package io.github.javiercanillas.temporal.newrelic;
+
+import com.newrelic.api.agent.NewRelic;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.IntStream;
+
+class TransactionSamplerTest {
+
+  private final AtomicLong now = new AtomicLong();
+
+  private TransactionSampler sampler(
+      final double rate, final Map<String, Double> typeRates, final int transactionsPerWindow) {
+    return new TransactionSampler(
+        rate, typeRates, transactionsPerWindow, Duration.ofSeconds(60), 100, now::get);
+  }
+
+  private static long sampled(final TransactionSampler sampler, final String type, final int executions) {
+    return IntStream.range(0, executions).filter(i -> sampler.sample(type)).count();
+  }
+
+  @Test
+  void sample_disabled() {
+    final var sampler = TransactionSampler.disabled();
+    Assertions.assertEquals(100, sampled(sampler, "type", 100));
+  }
+
+  @Test
+  void sample_rates() {
+    final var sampler = sampler(1d, Map.of("never", 0d, "half", 0.5d), 0);
+    Assertions.assertEquals(100, sampled(sampler, "type", 100));
+    Assertions.assertEquals(0, sampled(sampler, "never", 100));
+    final var half = sampled(sampler, "half", 10_000);
+    Assertions.assertTrue(half > 4_000 && half < 6_000, () -> "sampled " + half);
+  }
+
+  @Test
+  void sample_transactionsPerWindow() {
+    final var sampler = sampler(1d, Map.of(), 10);
+    // first window has no previous volume, so the target caps it
+    Assertions.assertEquals(10, sampled(sampler, "type", 1_000));
+    Assertions.assertEquals(10, sampled(sampler, "otherType", 20));
+
+    // next window lowers the rate to 10 out of the 1000 executions of the previous one
+    now.addAndGet(TimeUnit.SECONDS.toNanos(60));
+    final var adapted = sampled(sampler, "type", 1_000);
+    Assertions.assertTrue(adapted > 0 && adapted <= 10, () -> "sampled " + adapted);
+  }
+
+  @Test
+  void recordUnsampled() {
+    final var sampler = sampler(0d, Map.of(), 0);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      sampler.recordUnsampled("type", TimeUnit.MILLISECONDS.toNanos(5), false);
+      sampler.recordUnsampled(null, TimeUnit.MILLISECONDS.toNanos(5), true);
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(TransactionSampler.UNSAMPLED_METRIC + "type", 5L));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  TransactionSampler.UNSAMPLED_METRIC + TransactionSampler.UNKNOWN_TYPE, 5L));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  TransactionSampler.UNSAMPLED_METRIC + TransactionSampler.UNKNOWN_TYPE + "/errors"),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void builder() {
+    final var sampler = TransactionSampler.builder().rate(0.5d).typeRate("type", 0d).build();
+    Assertions.assertEquals(0.5d, sampler.getRate());
+    Assertions.assertEquals(Map.of("type", 0d), sampler.getTypeRates());
+    Assertions.assertEquals(TransactionSampler.DEFAULT_WINDOW, sampler.getWindow());
+    Assertions.assertEquals(TransactionSampler.DEFAULT_MAX_TYPES, sampler.getMaxTypes());
+    Assertions.assertEquals(sampler, sampler.toBuilder().build());
+  }
+
+  @Test
+  void invalid() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> TransactionSampler.builder().rate(1.5d).build());
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> TransactionSampler.builder().typeRate("type", -1d).build());
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> TransactionSampler.builder().transactionsPerWindow(-1).build());
+  }
+}
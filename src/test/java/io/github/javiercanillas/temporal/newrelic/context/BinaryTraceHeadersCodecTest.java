@@ -0,0 +1,79 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import com.google.protobuf.ByteString;
+import io.temporal.api.common.v1.Payload;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+class BinaryTraceHeadersCodecTest {
+
+  @Test
+  void testArguments() {
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new BinaryTraceHeadersCodec(0));
+  }
+
+  @Test
+  void encodeAndDecode() {
+    final var codec = new BinaryTraceHeadersCodec(1_024);
+    final var payload =
+        codec.encode(
+            Map.of(
+                "TraceParent", List.of("00-abc-def-01"),
+                "tracestate", List.of("a=1", "b=2"),
+                "other", List.of("ignored")));
+
+    Assertions.assertTrue(BinaryTraceHeadersCodec.isEncoded(payload));
+    // version + (3 + 13) + (3 + 3) * 2
+    Assertions.assertEquals(29, payload.getData().size());
+    Assertions.assertEquals(
+        Map.of("traceparent", List.of("00-abc-def-01"), "tracestate", List.of("a=1", "b=2")),
+        BinaryTraceHeadersCodec.decode(payload));
+  }
+
+  @Test
+  void encodeWithinBudget() {
+    final var codec = new BinaryTraceHeadersCodec(1 + 3 + 13 + 3 + 2);
+    final var payload =
+        codec.encode(
+            Map.of(
+                "traceparent", List.of("00-abc-def-01"),
+                "newrelic", List.of("value too long to fit"),
+                "tracestate", List.of("a=1", "b")));
+
+    Assertions.assertTrue(payload.getData().size() <= 22);
+    Assertions.assertEquals(
+        Map.of("traceparent", List.of("00-abc-def-01"), "tracestate", List.of("b")),
+        BinaryTraceHeadersCodec.decode(payload));
+    Assertions.assertNull(codec.encode(Map.of("newrelic", List.of("value too long to fit"))));
+  }
+
+  @Test
+  void decodeMalformed() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> BinaryTraceHeadersCodec.decode(payload(new byte[0])));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> BinaryTraceHeadersCodec.decode(payload(2)));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> BinaryTraceHeadersCodec.decode(payload(1, 0, 0)));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> BinaryTraceHeadersCodec.decode(payload(1, 0, 0, 5, 'a')));
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> BinaryTraceHeadersCodec.decode(payload(1, 9, 0, 0)));
+    Assertions.assertEquals(Map.of(), BinaryTraceHeadersCodec.decode(payload(1)));
+  }
+
+  private static Payload payload(final int... data) {
+    final var bytes = new byte[data.length];
+    for (int i = 0; i < data.length; i++) {
+      bytes[i] = (byte) data[i];
+    }
+    return payload(bytes);
+  }
+
+  private static Payload payload(final byte[] data) {
+    return Payload.newBuilder().setData(ByteString.copyFrom(data)).build();
+  }
+}
@@ -3,7 +3,9 @@ package io.github.javiercanillas.temporal.newrelic.context;
 import com.google.protobuf.ByteString;
 import com.google.protobuf.InvalidProtocolBufferException;
 import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.Headers;
 import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.TraceMetadata;
 import com.newrelic.api.agent.Transaction;
 import com.newrelic.api.agent.TransportType;
 import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
@@ -16,6 +18,7 @@ import org.mockito.MockedStatic;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.time.Duration;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -110,4 +113,170 @@ class NewRelicDistributedTraceContextPropagatorTest {
     Assertions.assertEquals(map.get("key").get(0), copiedMap.get("key").get(0));
     Assertions.assertEquals(map.get("key").get(1), copiedMap.get("key").get(1));
   }
+
+  @Test
+  void serializeAndDeserializeContext_binary() {
+    final var binaryPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .encoding(ContextEncoding.BINARY)
+                .build());
+    final var map =
+        Map.of(
+            "traceparent", List.of("00-trace-span-01"),
+            "newrelic", List.of("eyJ2IjpbMCwxXX0="),
+            "unknown", List.of("dropped"));
+
+    final var result = binaryPropagator.serializeContext(map);
+    Assertions.assertEquals(1, result.size());
+    final var payload = result.get(binaryPropagator.getName());
+    Assertions.assertEquals(
+        BinaryTraceHeadersCodec.ENCODING, payload.getMetadataOrThrow("encoding").toStringUtf8());
+
+    final var expected = Map.of(
+        "traceparent", List.of("00-trace-span-01"), "newrelic", List.of("eyJ2IjpbMCwxXX0="));
+    Assertions.assertEquals(expected, binaryPropagator.deserializeContext(result));
+    // JSON only workers do not understand it, but binary ones still read JSON payloads
+    Assertions.assertEquals(expected, propagator.deserializeContext(result));
+    Assertions.assertEquals(map, binaryPropagator.deserializeContext(propagator.serializeContext(map)));
+  }
+
+  @Test
+  void serializeContext_binaryWithoutKnownHeaders() {
+    final var binaryPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .encoding(ContextEncoding.BINARY)
+                .build());
+    Assertions.assertEquals(
+        Collections.emptyMap(), binaryPropagator.serializeContext(Collections.emptyMap()));
+    Assertions.assertEquals(
+        Collections.emptyMap(), binaryPropagator.serializeContext(Map.of("key", List.of("value"))));
+  }
+
+  @Test
+  void deserializeContext_cached() {
+    final var payloads = propagator.serializeContext(Map.of("key", List.of("value")));
+    final var sameContent =
+        Map.of(propagator.getName(), payloads.get(propagator.getName()).toBuilder().build());
+    try (MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      final var first = propagator.deserializeContext(payloads);
+      Assertions.assertSame(first, propagator.deserializeContext(sameContent));
+      Assertions.assertThrows(
+          UnsupportedOperationException.class, () -> ((Map<?, ?>) first).clear());
+      newRelicMockedStatic.verifyNoInteractions();
+    }
+    Assertions.assertEquals(1, propagator.getDeserializationCache().getHits());
+    Assertions.assertEquals(1, propagator.getDeserializationCache().getMisses());
+  }
+
+  @Test
+  void deserializeContext_cacheStatsReported() {
+    final var reportingPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .cacheStatsReportInterval(Duration.ZERO)
+                .build());
+    final var payloads = reportingPropagator.serializeContext(Map.of("key", List.of("value")));
+    try (MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      // stats are reported before the lookup, so each call reports the previous ones
+      for (int i = 0; i < 4; i++) {
+        reportingPropagator.deserializeContext(payloads);
+      }
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(NewRelicDistributedTraceContextPropagator.CACHE_MISS_METRIC, 1));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(NewRelicDistributedTraceContextPropagator.CACHE_HIT_METRIC, 1),
+          Mockito.times(2));
+    }
+  }
+
+  @Test
+  void deserializeContext_withoutCache() {
+    final var uncachedPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .deserializationCacheSize(0)
+                .build());
+    final var payloads = uncachedPropagator.serializeContext(Map.of("key", List.of("value")));
+    Assertions.assertNull(uncachedPropagator.getDeserializationCache());
+    Assertions.assertNotSame(
+        uncachedPropagator.deserializeContext(payloads),
+        uncachedPropagator.deserializeContext(payloads));
+    Assertions.assertEquals(
+        Map.of("key", List.of("value")), uncachedPropagator.deserializeContext(payloads));
+  }
+
+  @Test
+  void getCurrentContext_reusingHeaders() {
+    final var reusingPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .reuseOutboundHeaders(true)
+                .outboundHeadersMaxUses(2)
+                .build());
+    final var metadata = Mockito.mock(TraceMetadata.class);
+    Mockito.doReturn("trace1", "trace1", "trace1", "trace2").when(metadata).getTraceId();
+    Mockito.doReturn(metadata).when(agent).getTraceMetadata();
+    Mockito.doReturn(transaction).when(agent).getTransaction();
+    Mockito.doAnswer(
+            invocation -> {
+              invocation.<Headers>getArgument(0).setHeader("traceparent", "value");
+              return null;
+            })
+        .when(transaction)
+        .insertDistributedTraceHeaders(Mockito.any());
+    try (MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class);
+        var scope = TraceContextCarrier.open()) {
+      newRelicMockedStatic.when(NewRelic::getAgent).thenReturn(agent);
+      final var first = reusingPropagator.getCurrentContext();
+      Assertions.assertEquals(Map.of("traceparent", List.of("value")), first);
+      Assertions.assertSame(first, reusingPropagator.getCurrentContext());
+      // max uses reached
+      final var refreshed = reusingPropagator.getCurrentContext();
+      Assertions.assertNotSame(first, refreshed);
+      // trace changed
+      Assertions.assertNotSame(refreshed, reusingPropagator.getCurrentContext());
+    }
+    Mockito.verify(transaction, Mockito.times(3)).insertDistributedTraceHeaders(Mockito.any());
+  }
+
+  @Test
+  void getCurrentContext_reusingHeadersWithoutScope() {
+    final var reusingPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .reuseOutboundHeaders(true)
+                .build());
+    final var metadata = Mockito.mock(TraceMetadata.class);
+    Mockito.doReturn("trace").when(metadata).getTraceId();
+    Mockito.doReturn(metadata).when(agent).getTraceMetadata();
+    Mockito.doReturn(transaction).when(agent).getTransaction();
+    try (MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      newRelicMockedStatic.when(NewRelic::getAgent).thenReturn(agent);
+      reusingPropagator.getCurrentContext();
+      reusingPropagator.getCurrentContext();
+    }
+    Assertions.assertNull(TraceContextCarrier.getOutbound());
+    Mockito.verify(transaction, Mockito.times(2)).insertDistributedTraceHeaders(Mockito.any());
+  }
+
+  @Test
+  void getCurrentContext_reusingHeadersWithoutTrace() {
+    final var reusingPropagator =
+        new NewRelicDistributedTraceContextPropagator(
+            NewRelicDistributedTraceContextPropagatorOptions.builder()
+                .reuseOutboundHeaders(true)
+                .build());
+    final var metadata = Mockito.mock(TraceMetadata.class);
+    Mockito.doReturn("").when(metadata).getTraceId();
+    Mockito.doReturn(metadata).when(agent).getTraceMetadata();
+    Mockito.doReturn(transaction).when(agent).getTransaction();
+    try (MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      newRelicMockedStatic.when(NewRelic::getAgent).thenReturn(agent);
+      reusingPropagator.getCurrentContext();
+      reusingPropagator.getCurrentContext();
+    }
+    Mockito.verify(transaction, Mockito.times(2)).insertDistributedTraceHeaders(Mockito.any());
+  }
 }
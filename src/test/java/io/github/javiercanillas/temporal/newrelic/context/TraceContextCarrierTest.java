@@ -0,0 +1,101 @@
+package io.github.javiercanillas.temporal.newrelic.context;
+
+import com.newrelic.api.agent.NewRelic;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+
+class TraceContextCarrierTest {
+
+  private static final Map<String, List<String>> CONTEXT = Map.of("key", List.of("value"));
+
+  @BeforeEach
+  void setup() {
+    TraceContextCarrier.open().close();
+  }
+
+  @Test
+  void take() {
+    TraceContextCarrier.offer(CONTEXT);
+    Assertions.assertSame(CONTEXT, TraceContextCarrier.peek());
+    Assertions.assertSame(CONTEXT, TraceContextCarrier.take());
+    Assertions.assertNull(TraceContextCarrier.take());
+  }
+
+  @Test
+  void close() {
+    final var scope = TraceContextCarrier.open();
+    TraceContextCarrier.offer(CONTEXT);
+    TraceContextCarrier.setOutbound("outbound");
+    scope.close();
+    Assertions.assertNull(TraceContextCarrier.peek());
+    Assertions.assertNull(TraceContextCarrier.getOutbound());
+  }
+
+  @Test
+  void close_otherThread() throws InterruptedException {
+    final var scope = TraceContextCarrier.open();
+    TraceContextCarrier.offer(CONTEXT);
+    final var thread = new Thread(scope::close);
+    thread.start();
+    thread.join();
+    Assertions.assertSame(CONTEXT, TraceContextCarrier.peek());
+  }
+
+  @Test
+  void close_nested() {
+    final var scope = TraceContextCarrier.open();
+    TraceContextCarrier.offer(CONTEXT);
+    TraceContextCarrier.setOutbound("outbound");
+    TraceContextCarrier.open().close();
+    Assertions.assertSame(CONTEXT, TraceContextCarrier.peek());
+    Assertions.assertEquals("outbound", TraceContextCarrier.getOutbound());
+    scope.close();
+    Assertions.assertNull(TraceContextCarrier.peek());
+  }
+
+  @Test
+  void take_keepsOutbound() {
+    try (var scope = TraceContextCarrier.open()) {
+      Assertions.assertTrue(TraceContextCarrier.setOutbound("outbound"));
+      TraceContextCarrier.offer(CONTEXT);
+      TraceContextCarrier.take();
+      Assertions.assertEquals("outbound", TraceContextCarrier.getOutbound());
+    }
+  }
+
+  @Test
+  void setOutbound_withoutScope() {
+    Assertions.assertFalse(TraceContextCarrier.setOutbound("outbound"));
+    Assertions.assertNull(TraceContextCarrier.getOutbound());
+  }
+
+  @Test
+  void offer_leaked() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      TraceContextCarrier.offer(CONTEXT);
+      TraceContextCarrier.take();
+      TraceContextCarrier.offer(CONTEXT);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(TraceContextCarrier.LEAKED_METRIC), Mockito.never());
+      TraceContextCarrier.offer(CONTEXT);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(TraceContextCarrier.LEAKED_METRIC), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void offer_withinScope() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class);
+        var scope = TraceContextCarrier.open()) {
+      TraceContextCarrier.offer(CONTEXT);
+      TraceContextCarrier.offer(CONTEXT);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(TraceContextCarrier.LEAKED_METRIC), Mockito.never());
+    }
+  }
+}
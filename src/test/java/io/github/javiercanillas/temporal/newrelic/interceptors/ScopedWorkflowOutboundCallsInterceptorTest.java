@@ -0,0 +1,41 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import com.newrelic.api.agent.NewRelic;
+import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+@ExtendWith(MockitoExtension.class)
+class ScopedWorkflowOutboundCallsInterceptorTest {
+
+  @Mock private WorkflowOutboundCallsInterceptor next;
+
+  @Test
+  void newChildThread() {
+    final var context = Map.of("key", List.of("value"));
+    final var propagator = new NewRelicDistributedTraceContextPropagator();
+    final var ran = new boolean[1];
+    new ScopedWorkflowOutboundCallsInterceptor(next).newChildThread(() -> ran[0] = true, false, "name");
+    final var captor = ArgumentCaptor.forClass(Runnable.class);
+    Mockito.verify(next).newChildThread(captor.capture(), Mockito.eq(false), Mockito.eq("name"));
+
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      // Temporal sets the parent context on the child thread before running it
+      propagator.setCurrentContext(context);
+      captor.getValue().run();
+      Assertions.assertTrue(ran[0]);
+      // the context was dropped along with the scope, so there is none to hand over
+      Assertions.assertEquals(Collections.emptyMap(), propagator.getCurrentContext());
+    }
+  }
+}
@@ -0,0 +1,65 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import com.newrelic.api.agent.NewRelic;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.client.ActivityCanceledException;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+@ExtendWith(MockitoExtension.class)
+class TraceActivityExecutionContextTest {
+
+  private static final String HEARTBEAT_METRIC =
+      TraceActivityExecutionContext.HEARTBEAT_METRIC + "activityType";
+  private static final String CANCELLATION_METRIC =
+      TraceActivityExecutionContext.CANCELLATION_METRIC + "activityType";
+
+  @Mock private ActivityExecutionContext next;
+  @Mock private ActivityInfo info;
+
+  @BeforeEach
+  void setup() {
+    Mockito.doReturn(info).when(next).getInfo();
+    Mockito.doReturn("activityType").when(info).getActivityType();
+  }
+
+  @Test
+  void heartbeat() {
+    var context = new TraceActivityExecutionContext(next);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      context.heartbeat("details");
+      context.heartbeat("details");
+      context.exit();
+      mockedNewRelic.verify(() -> NewRelic.incrementCounter(HEARTBEAT_METRIC), Mockito.times(2));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq(HEARTBEAT_METRIC + "/duration"), Mockito.anyLong()),
+          Mockito.times(2));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(Mockito.eq(CANCELLATION_METRIC), Mockito.anyLong()),
+          Mockito.never());
+    }
+    Mockito.verify(next, Mockito.times(2)).heartbeat("details");
+  }
+
+  @Test
+  void heartbeat_cancelled() {
+    Mockito.doThrow(ActivityCanceledException.class).when(next).heartbeat(Mockito.any());
+    var context = new TraceActivityExecutionContext(next);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertThrows(ActivityCanceledException.class, () -> context.heartbeat(null));
+      Assertions.assertThrows(ActivityCanceledException.class, () -> context.heartbeat(null));
+      context.exit();
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(Mockito.eq(CANCELLATION_METRIC), Mockito.anyLong()),
+          Mockito.times(1));
+    }
+  }
+}
@@ -1,5 +1,11 @@
 package io.github.javiercanillas.temporal.newrelic.interceptors;
 
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.Transaction;
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.ExceptionAttributeExtractor;
+import io.github.javiercanillas.temporal.newrelic.TransactionSampler;
 import io.temporal.activity.ActivityExecutionContext;
 import io.temporal.activity.ActivityInfo;
 import io.temporal.common.interceptors.ActivityInboundCallsInterceptor;
@@ -11,6 +17,8 @@ import org.mockito.Mock;
 import org.mockito.Mockito;
 import org.mockito.junit.jupiter.MockitoExtension;
 
+import java.util.Map;
+
 @ExtendWith(MockitoExtension.class)
 class TraceActivityInboundCallsInterceptorTest {
 
@@ -31,6 +39,14 @@ class TraceActivityInboundCallsInterceptorTest {
     Mockito.verify(next, Mockito.times(1)).init(context);
   }
 
+  @Test
+  void init_tracingHeartbeats() {
+    final var options = TraceWorkerInterceptorOptions.builder().traceHeartbeats(true).build();
+    new TraceActivityInboundCallsInterceptor(options, next).init(context);
+    Mockito.verify(next, Mockito.times(1))
+        .init(Mockito.any(TraceActivityExecutionContext.class));
+  }
+
   @Test
   void execute_ok() {
     var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
@@ -53,4 +69,139 @@ class TraceActivityInboundCallsInterceptorTest {
         Assertions.assertThrows(
             RuntimeException.class, () -> traceActivityInboundCallsInterceptor.execute(input)));
   }
+
+  @Test
+  void execute_unsampled() {
+    var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
+    var expectedOutput = Mockito.mock(ActivityInboundCallsInterceptor.ActivityOutput.class);
+    var agent = Mockito.mock(Agent.class);
+    var transaction = Mockito.mock(Transaction.class);
+    Mockito.doReturn(transaction).when(agent).getTransaction();
+    Mockito.doReturn(expectedOutput).when(next).execute(input);
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    final var options =
+        TraceWorkerInterceptorOptions.builder()
+            .transactionSampler(TransactionSampler.builder().typeRate("activityType", 0d).build())
+            .build();
+    final var interceptor = new TraceActivityInboundCallsInterceptor(options, next);
+    interceptor.init(context);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      Assertions.assertEquals(expectedOutput, interceptor.execute(input));
+      mockedNewRelic.verify(
+          () -> NewRelic.setTransactionName(Mockito.any(), Mockito.any()), Mockito.never());
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq("Custom/temporalio/unsampled/activityType"), Mockito.anyLong()));
+    }
+    Mockito.verify(transaction).ignore();
+  }
+
+  @Test
+  void execute_lightweightLocalActivity() {
+    var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
+    var ex = new RuntimeException("Expected!");
+    Mockito.doThrow(ex).when(next).execute(input);
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    Mockito.doReturn(true).when(info).isLocal();
+    final var options = TraceWorkerInterceptorOptions.builder().lightweightLocalActivities(true).build();
+    final var interceptor = new TraceActivityInboundCallsInterceptor(options, next);
+    interceptor.init(context);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertThrows(RuntimeException.class, () -> interceptor.execute(input));
+      mockedNewRelic.verify(
+          () -> NewRelic.setTransactionName(Mockito.any(), Mockito.any()), Mockito.never());
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq(TraceActivityInboundCallsInterceptor.LOCAL_ACTIVITY_METRIC + "activityType"),
+                  Mockito.anyLong()));
+      mockedNewRelic.verify(() -> NewRelic.noticeError(ex, Map.of(), false));
+    }
+  }
+
+  @Test
+  void execute_latency() {
+    var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
+    var expectedOutput = Mockito.mock(ActivityInboundCallsInterceptor.ActivityOutput.class);
+    Mockito.doReturn(expectedOutput).when(next).execute(input);
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    Mockito.doReturn("taskQueue").when(info).getActivityTaskQueue();
+    Mockito.doReturn(2).when(info).getAttempt();
+    Mockito.doReturn(1_000L).when(info).getScheduledTimestamp();
+    Mockito.doReturn(1_500L).when(info).getCurrentAttemptScheduledTimestamp();
+    Mockito.doReturn(1_600L).when(info).getStartedTimestamp();
+    final var interceptor = new TraceActivityInboundCallsInterceptor(CATEGORY, next);
+    interceptor.init(context);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertEquals(expectedOutput, interceptor.execute(input));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  TraceActivityInboundCallsInterceptor.SCHEDULE_TO_START_METRIC + "taskQueue/activityType", 100L));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  TraceActivityInboundCallsInterceptor.SCHEDULE_TO_ATTEMPT_START_METRIC + "taskQueue/activityType", 600L));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(TraceActivityInboundCallsInterceptor.RETRY_METRIC + "taskQueue/activityType"));
+      mockedNewRelic.verify(
+          () -> NewRelic.addCustomParameter(TraceActivityInboundCallsInterceptor.ATTEMPT_ATTRIBUTE, 2));
+      mockedNewRelic.verify(
+          () -> NewRelic.addCustomParameter(TraceActivityInboundCallsInterceptor.TASK_QUEUE_ATTRIBUTE, "taskQueue"));
+      mockedNewRelic.verify(
+          () -> NewRelic.addCustomParameter(TraceActivityInboundCallsInterceptor.SCHEDULE_TO_START_ATTRIBUTE, 100L));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.addCustomParameter(
+                  TraceActivityInboundCallsInterceptor.SCHEDULE_TO_ATTEMPT_START_ATTRIBUTE, 600L));
+    }
+  }
+
+  @Test
+  void execute_exceptionAttributes() {
+    var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
+    var ex = new IllegalStateException("Expected!", new RuntimeException("cause"));
+    Mockito.doThrow(ex).when(next).execute(input);
+    final var options =
+        TraceWorkerInterceptorOptions.builder()
+            .exceptionAttributeExtractor(
+                ExceptionAttributeExtractor.builder().maxCauseDepth(1).build())
+            .build();
+    final var interceptor = new TraceActivityInboundCallsInterceptor(options, next);
+    interceptor.init(context);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertThrows(IllegalStateException.class, () -> interceptor.execute(input));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.noticeError(
+                  ex, Map.of("cause1.class", RuntimeException.class.getName()), false),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void execute_exceptionDeduplicated() {
+    var input = Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class);
+    var ex = new RuntimeException("Expected!");
+    Mockito.doThrow(ex).when(next).execute(input);
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    final var options =
+        TraceWorkerInterceptorOptions.builder()
+            .errorDeduplicator(ErrorDeduplicator.builder().maxErrorsPerWindow(1).build())
+            .build();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      for (int i = 0; i < 3; i++) {
+        final var interceptor = new TraceActivityInboundCallsInterceptor(options, next);
+        interceptor.init(context);
+        Assertions.assertThrows(RuntimeException.class, () -> interceptor.execute(input));
+      }
+      mockedNewRelic.verify(
+          () -> NewRelic.noticeError(ex, Map.of(), false), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter("Custom/temporalio/errors/suppressed/activityType"),
+          Mockito.times(2));
+    }
+  }
 }
@@ -1,5 +1,7 @@
 package io.github.javiercanillas.temporal.newrelic.interceptors;
 
+import io.github.javiercanillas.temporal.newrelic.ErrorDeduplicator;
+import io.github.javiercanillas.temporal.newrelic.ExceptionAttributeExtractor;
 import org.junit.jupiter.api.Assertions;
 import org.junit.jupiter.api.Test;
 
@@ -14,4 +16,23 @@ class TraceWorkerInterceptorTest {
   void interceptActivity() {
     Assertions.assertNotNull(new TraceWorkerInterceptor().interceptActivity(null));
   }
+
+  @Test
+  void interceptWithOptions() {
+    final var interceptor =
+        new TraceWorkerInterceptor(
+            TraceWorkerInterceptorOptions.builder()
+                .exceptionAttributeExtractor(
+                    ExceptionAttributeExtractor.builder().maxCauseDepth(1).build())
+                .build());
+    Assertions.assertNotNull(interceptor.interceptWorkflow(null));
+    Assertions.assertNotNull(interceptor.interceptActivity(null));
+  }
+
+  @Test
+  void defaultOptions() {
+    Assertions.assertSame(
+        ErrorDeduplicator.disabled(),
+        TraceWorkerInterceptorOptions.builder().build().getErrorDeduplicator());
+  }
 }
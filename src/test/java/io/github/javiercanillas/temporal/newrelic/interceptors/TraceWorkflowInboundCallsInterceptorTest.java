@@ -1,6 +1,8 @@
 package io.github.javiercanillas.temporal.newrelic.interceptors;
 
+import com.newrelic.api.agent.NewRelic;
 import io.temporal.common.interceptors.WorkflowInboundCallsInterceptor;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
 import io.temporal.workflow.Workflow;
 import io.temporal.workflow.WorkflowInfo;
 import org.junit.jupiter.api.Assertions;
@@ -17,6 +19,8 @@ import java.util.function.Supplier;
 class TraceWorkflowInboundCallsInterceptorTest {
 
   private static final String CATEGORY = "category";
+  private static final String REPLAY_METRIC =
+      TraceWorkflowInboundCallsInterceptor.REPLAY_METRIC + "type/";
   @Mock private WorkflowInboundCallsInterceptor next;
   @Mock private WorkflowInfo info;
 
@@ -95,6 +99,105 @@ class TraceWorkflowInboundCallsInterceptorTest {
             RuntimeException.class, () -> doWithWorkflowMocks(Workflow::getInfo, info, supplier)));
   }
 
+  @Test
+  void execute_replaying() {
+    var expectedOutput = Mockito.mock(WorkflowInboundCallsInterceptor.WorkflowOutput.class);
+    var input = Mockito.mock(WorkflowInboundCallsInterceptor.WorkflowInput.class);
+    Mockito.doReturn(expectedOutput).when(next).execute(input);
+    Mockito.doReturn("type").when(info).getWorkflowType();
+    var interceptor = new TraceWorkflowInboundCallsInterceptor(CATEGORY, next);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      workflowMockedStatic.when(Workflow::getInfo).thenReturn(info);
+      workflowMockedStatic.when(Workflow::isReplaying).thenReturn(true);
+      Assertions.assertEquals(expectedOutput, interceptor.execute(input));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(REPLAY_METRIC + "execute"));
+      newRelicMockedStatic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq(REPLAY_METRIC + "execute/duration"),
+                  Mockito.anyLong()));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.setTransactionName(Mockito.any(), Mockito.any()), Mockito.never());
+    }
+  }
+
+  @Test
+  void handleSignal_failAfterReplay() {
+    var expectedEx = new RuntimeException("expected!");
+    var input = Mockito.mock(WorkflowInboundCallsInterceptor.SignalInput.class);
+    Mockito.doReturn("signal").when(input).getSignalName();
+    Mockito.doReturn("type").when(info).getWorkflowType();
+    Mockito.doThrow(expectedEx).when(next).handleSignal(input);
+    var interceptor = new TraceWorkflowInboundCallsInterceptor(CATEGORY, next);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      workflowMockedStatic.when(Workflow::getInfo).thenReturn(info);
+      workflowMockedStatic.when(Workflow::isReplaying).thenReturn(true, false);
+      Assertions.assertEquals(
+          expectedEx,
+          Assertions.assertThrows(RuntimeException.class, () -> interceptor.handleSignal(input)));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(
+              REPLAY_METRIC + "signal/signal"));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.noticeError(Mockito.eq(expectedEx), Mockito.anyMap(), Mockito.eq(false)));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(REPLAY_METRIC + "signal/signal/resumed"));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.recordResponseTimeMetric(Mockito.any(), Mockito.anyLong()),
+          Mockito.never());
+    }
+  }
+
+  @Test
+  void execute_resumedAfterReplay() {
+    var expectedOutput = Mockito.mock(WorkflowInboundCallsInterceptor.WorkflowOutput.class);
+    var input = Mockito.mock(WorkflowInboundCallsInterceptor.WorkflowInput.class);
+    Mockito.doReturn(expectedOutput).when(next).execute(input);
+    Mockito.doReturn("type").when(info).getWorkflowType();
+    var interceptor = new TraceWorkflowInboundCallsInterceptor(CATEGORY, next);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      workflowMockedStatic.when(Workflow::getInfo).thenReturn(info);
+      workflowMockedStatic.when(Workflow::isReplaying).thenReturn(true, false);
+      Assertions.assertEquals(expectedOutput, interceptor.execute(input));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(REPLAY_METRIC + "execute"));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.incrementCounter(REPLAY_METRIC + "execute/resumed"));
+      newRelicMockedStatic.verify(
+          () -> NewRelic.recordResponseTimeMetric(Mockito.any(), Mockito.anyLong()),
+          Mockito.never());
+      newRelicMockedStatic.verify(
+          () -> NewRelic.setTransactionName(Mockito.any(), Mockito.any()), Mockito.never());
+    }
+  }
+
+  @Test
+  void execute_tracingReplays() {
+    var input = Mockito.mock(WorkflowInboundCallsInterceptor.WorkflowInput.class);
+    var interceptor =
+        new TraceWorkflowInboundCallsInterceptor(
+            TraceWorkerInterceptorOptions.builder().traceReplays(true).build(), next);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      workflowMockedStatic.when(Workflow::getInfo).thenReturn(info);
+      interceptor.execute(input);
+      workflowMockedStatic.verify(Workflow::isReplaying, Mockito.never());
+      newRelicMockedStatic.verify(
+          () -> NewRelic.setTransactionName(Mockito.eq("Workflow"), Mockito.any()));
+    }
+  }
+
+  @Test
+  void init() {
+    var outbound = Mockito.mock(WorkflowOutboundCallsInterceptor.class);
+    new TraceWorkflowInboundCallsInterceptor("Workflow", next).init(outbound);
+    Mockito.verify(next).init(Mockito.any(ScopedWorkflowOutboundCallsInterceptor.class));
+  }
+
   private void doWithWorkflowMocks(
       final MockedStatic.Verification verification,
       final Object rtnObject,
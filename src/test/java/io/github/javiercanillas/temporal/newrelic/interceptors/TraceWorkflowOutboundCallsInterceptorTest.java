@@ -0,0 +1,100 @@
+package io.github.javiercanillas.temporal.newrelic.interceptors;
+
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.Segment;
+import com.newrelic.api.agent.Transaction;
+import io.temporal.common.interceptors.WorkflowOutboundCallsInterceptor;
+import io.temporal.workflow.Functions;
+import io.temporal.workflow.Promise;
+import io.temporal.workflow.Workflow;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.MockedStatic;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.time.Duration;
+
+@ExtendWith(MockitoExtension.class)
+class TraceWorkflowOutboundCallsInterceptorTest {
+
+  @Mock private WorkflowOutboundCallsInterceptor next;
+  @Mock private Agent agent;
+  @Mock private Transaction transaction;
+  @Mock private Segment segment;
+
+  @BeforeEach
+  void setup() {
+    Mockito.lenient().doReturn(transaction).when(agent).getTransaction();
+    Mockito.lenient().doReturn(segment).when(transaction).startSegment(Mockito.any(), Mockito.any());
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void executeActivity() {
+    var input = Mockito.mock(WorkflowOutboundCallsInterceptor.ActivityInput.class);
+    var output = Mockito.mock(WorkflowOutboundCallsInterceptor.ActivityOutput.class);
+    var result = Mockito.mock(Promise.class);
+    Mockito.doReturn("activityType").when(input).getActivityName();
+    Mockito.doReturn(result).when(output).getResult();
+    Mockito.doReturn(output).when(next).executeActivity(input);
+    var interceptor = new TraceWorkflowOutboundCallsInterceptor(next, false);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      newRelicMockedStatic.when(NewRelic::getAgent).thenReturn(agent);
+      Assertions.assertEquals(output, interceptor.executeActivity(input));
+      Mockito.verify(transaction)
+          .startSegment(
+              TraceWorkflowOutboundCallsInterceptor.SEGMENT_CATEGORY, "activity/activityType");
+      Mockito.verify(segment, Mockito.never()).end();
+
+      ArgumentCaptor<Functions.Func2<Object, RuntimeException, Object>> captor =
+          ArgumentCaptor.forClass(Functions.Func2.class);
+      Mockito.verify(result).handle(captor.capture());
+      captor.getValue().apply(null, new RuntimeException("expected!"));
+      Mockito.verify(segment).end();
+      newRelicMockedStatic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq(TraceWorkflowOutboundCallsInterceptor.METRIC + "activity/activityType"),
+                  Mockito.anyLong()));
+    }
+  }
+
+  @Test
+  void sleep() {
+    var interceptor = new TraceWorkflowOutboundCallsInterceptor(next, false);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      newRelicMockedStatic.when(NewRelic::getAgent).thenReturn(agent);
+      interceptor.sleep(Duration.ofMinutes(1));
+      Mockito.verify(next).sleep(Duration.ofMinutes(1));
+      Mockito.verify(segment).end();
+      newRelicMockedStatic.verify(
+          () ->
+              NewRelic.recordResponseTimeMetric(
+                  Mockito.eq(TraceWorkflowOutboundCallsInterceptor.METRIC + "timer/sleep"),
+                  Mockito.anyLong()));
+    }
+  }
+
+  @Test
+  @SuppressWarnings("unchecked")
+  void newTimer_replaying() {
+    var result = Mockito.mock(Promise.class);
+    Mockito.doReturn(result).when(next).newTimer(Duration.ofMinutes(1));
+    var interceptor = new TraceWorkflowOutboundCallsInterceptor(next, false);
+    try (MockedStatic<Workflow> workflowMockedStatic = Mockito.mockStatic(Workflow.class);
+        MockedStatic<NewRelic> newRelicMockedStatic = Mockito.mockStatic(NewRelic.class)) {
+      workflowMockedStatic.when(Workflow::isReplaying).thenReturn(true);
+      Assertions.assertEquals(result, interceptor.newTimer(Duration.ofMinutes(1)));
+      newRelicMockedStatic.verify(NewRelic::getAgent, Mockito.never());
+      Mockito.verify(result, Mockito.never()).handle(Mockito.any());
+    }
+  }
+}
@@ -0,0 +1,217 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.uber.m3.tally.Buckets;
+import com.uber.m3.tally.CapableOf;
+import com.uber.m3.tally.StatsReporter;
+import com.uber.m3.util.Duration;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+class AsyncStatsReporterTest {
+
+  private static final Map<String, String> TAGS = Map.of("tag", "value");
+  private static final long TIMEOUT = TimeUnit.SECONDS.toMillis(5);
+
+  @Mock private StatsReporter delegate;
+  @Mock private Buckets buckets;
+
+  @SuppressWarnings("deprecation")
+  @Test
+  void report() {
+    final var reporter = new AsyncStatsReporter(delegate, 16, OverflowPolicy.DROP_NEWEST);
+    try {
+      reporter.reportCounter("counter", TAGS, 1L);
+      reporter.reportGauge("gauge", TAGS, 2d);
+      reporter.reportTimer("timer", TAGS, Duration.ofMillis(3));
+      reporter.reportHistogramValueSamples("histogram", TAGS, buckets, 1d, 2d, 4L);
+      reporter.reportHistogramDurationSamples(
+          "histogram", TAGS, buckets, Duration.ofMillis(1), Duration.ofMillis(2), 5L);
+      reporter.flush();
+
+      final InOrder inOrder = Mockito.inOrder(delegate);
+      inOrder.verify(delegate, Mockito.timeout(TIMEOUT)).reportCounter("counter", TAGS, 1L);
+      inOrder.verify(delegate, Mockito.timeout(TIMEOUT)).reportGauge("gauge", TAGS, 2d);
+      inOrder
+          .verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportTimer("timer", TAGS, Duration.ofMillis(3));
+      inOrder
+          .verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportHistogramValueSamples("histogram", TAGS, buckets, 1d, 2d, 4L);
+      inOrder
+          .verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportHistogramDurationSamples(
+              "histogram", TAGS, buckets, Duration.ofMillis(1), Duration.ofMillis(2), 5L);
+      inOrder
+          .verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportGauge(
+              ArgumentMatchers.eq(AsyncStatsReporter.QUEUE_DEPTH_METRIC),
+              ArgumentMatchers.eq(Map.of()),
+              ArgumentMatchers.anyDouble());
+      inOrder.verify(delegate, Mockito.timeout(TIMEOUT)).flush();
+      Mockito.verify(delegate, Mockito.never())
+          .reportCounter(
+              ArgumentMatchers.eq(AsyncStatsReporter.DROPPED_METRIC),
+              ArgumentMatchers.any(),
+              ArgumentMatchers.anyLong());
+    } finally {
+      reporter.close();
+    }
+  }
+
+  @Test
+  void capabilities() {
+    Mockito.doReturn(CapableOf.REPORTING).when(delegate).capabilities();
+    final var reporter = new AsyncStatsReporter(delegate, 16, OverflowPolicy.DROP_NEWEST);
+    try {
+      Assertions.assertSame(CapableOf.REPORTING, reporter.capabilities());
+    } finally {
+      reporter.close();
+    }
+  }
+
+  @Test
+  void report_dropNewest() throws InterruptedException {
+    final var blocked = blockDelegate();
+    final var reporter = new AsyncStatsReporter(delegate, 2, OverflowPolicy.DROP_NEWEST);
+    try {
+      reporter.reportCounter("blocking", TAGS, 0L);
+      blocked.await();
+      for (long i = 1; i <= 4; i++) {
+        reporter.reportCounter("counter", TAGS, i);
+      }
+      Assertions.assertEquals(2L, reporter.getQueueDepth());
+      Assertions.assertEquals(2L, reporter.getDropped());
+    } finally {
+      release();
+      reporter.close();
+    }
+    Mockito.verify(delegate).reportCounter("counter", TAGS, 1L);
+    Mockito.verify(delegate).reportCounter("counter", TAGS, 2L);
+    Mockito.verify(delegate, Mockito.never()).reportCounter("counter", TAGS, 3L);
+    Mockito.verify(delegate, Mockito.never()).reportCounter("counter", TAGS, 4L);
+    Mockito.verify(delegate).reportCounter(AsyncStatsReporter.DROPPED_METRIC, Map.of(), 2L);
+    Mockito.verify(delegate).flush();
+    Mockito.verify(delegate).close();
+  }
+
+  @Test
+  void report_dropOldest() throws InterruptedException {
+    final var blocked = blockDelegate();
+    final var reporter = new AsyncStatsReporter(delegate, 2, OverflowPolicy.DROP_OLDEST);
+    try {
+      reporter.reportCounter("blocking", TAGS, 0L);
+      blocked.await();
+      for (long i = 1; i <= 4; i++) {
+        reporter.reportCounter("counter", TAGS, i);
+      }
+      Assertions.assertEquals(2L, reporter.getQueueDepth());
+      Assertions.assertEquals(2L, reporter.getDropped());
+    } finally {
+      release();
+      reporter.close();
+    }
+    Mockito.verify(delegate, Mockito.never()).reportCounter("counter", TAGS, 1L);
+    Mockito.verify(delegate, Mockito.never()).reportCounter("counter", TAGS, 2L);
+    Mockito.verify(delegate).reportCounter("counter", TAGS, 3L);
+    Mockito.verify(delegate).reportCounter("counter", TAGS, 4L);
+    Mockito.verify(delegate).reportCounter(AsyncStatsReporter.DROPPED_METRIC, Map.of(), 2L);
+  }
+
+  @Test
+  void flush_maxQueueDepth() throws InterruptedException {
+    final var blocked = blockDelegate();
+    final var reporter = new AsyncStatsReporter(delegate, 4, OverflowPolicy.DROP_NEWEST);
+    try {
+      reporter.reportCounter("blocking", TAGS, 0L);
+      blocked.await();
+      reporter.reportCounter("counter", TAGS, 1L);
+      reporter.reportCounter("counter", TAGS, 2L);
+      reporter.flush();
+      release();
+      Mockito.verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportGauge(AsyncStatsReporter.QUEUE_DEPTH_METRIC, Map.of(), 2d);
+
+      // nothing queued since the previous flush
+      reporter.flush();
+      Mockito.verify(delegate, Mockito.timeout(TIMEOUT))
+          .reportGauge(AsyncStatsReporter.QUEUE_DEPTH_METRIC, Map.of(), 0d);
+    } finally {
+      reporter.close();
+    }
+  }
+
+  @Test
+  void report_block() throws InterruptedException {
+    final var reporter = new AsyncStatsReporter(delegate, 4, OverflowPolicy.BLOCK);
+    final var executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 1000; i++) {
+      executor.execute(() -> reporter.reportCounter("counter", TAGS, 1L));
+    }
+    executor.shutdown();
+    Assertions.assertTrue(executor.awaitTermination(10, TimeUnit.SECONDS));
+    reporter.close();
+    Mockito.verify(delegate, Mockito.times(1000)).reportCounter("counter", TAGS, 1L);
+    Assertions.assertEquals(0L, reporter.getDropped());
+    Mockito.verify(delegate).close();
+  }
+
+  @Test
+  void report_afterClose() {
+    final var reporter = new AsyncStatsReporter(delegate, 4, OverflowPolicy.BLOCK);
+    reporter.close();
+    reporter.reportCounter("counter", TAGS, 1L);
+    Mockito.verify(delegate, Mockito.never()).reportCounter("counter", TAGS, 1L);
+    Assertions.assertEquals(1L, reporter.getDropped());
+  }
+
+  @Test
+  void report_delegateFails() {
+    Mockito.doThrow(new IllegalStateException("expected"))
+        .when(delegate)
+        .reportCounter("failing", TAGS, 1L);
+    final var reporter = new AsyncStatsReporter(delegate, 4, OverflowPolicy.DROP_NEWEST);
+    reporter.reportCounter("failing", TAGS, 1L);
+    reporter.reportCounter("counter", TAGS, 1L);
+    reporter.close();
+    Mockito.verify(delegate).reportCounter("counter", TAGS, 1L);
+  }
+
+  @Test
+  void constructor_invalidQueueSize() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> new AsyncStatsReporter(delegate, 0, OverflowPolicy.DROP_NEWEST));
+  }
+
+  private final CountDownLatch release = new CountDownLatch(1);
+
+  /** Makes the drainer wait on the first report, until {@link #release()} is called. */
+  private CountDownLatch blockDelegate() {
+    final var blocked = new CountDownLatch(1);
+    Mockito.doAnswer(
+            invocation -> {
+              blocked.countDown();
+              release.await(TIMEOUT, TimeUnit.MILLISECONDS);
+              return null;
+            })
+        .when(delegate)
+        .reportCounter("blocking", TAGS, 0L);
+    return blocked;
+  }
+
+  private void release() {
+    release.countDown();
+  }
+}
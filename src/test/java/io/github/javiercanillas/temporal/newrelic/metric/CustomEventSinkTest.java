@@ -0,0 +1,160 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.Insights;
+import com.newrelic.api.agent.NewRelic;
+import io.temporal.serviceclient.MetricsTag;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+class CustomEventSinkTest {
+
+  private static final Map<String, String> TAGS = Map.of(MetricsTag.TASK_QUEUE, "taskQueue");
+
+  @Mock private Agent agent;
+  @Mock private Insights insights;
+
+  @BeforeEach
+  void setup() {
+    Mockito.lenient().doReturn(insights).when(agent).getInsights();
+  }
+
+  private static MetricId id(final MetricKind kind) {
+    return new MetricId(new MetricKey(kind, "name", TAGS), kind.getSegment());
+  }
+
+  @Test
+  void flush() {
+    final var sink = new CustomEventSink(10, 10);
+    sink.counter(id(MetricKind.COUNTER), 3L);
+    sink.gauge(id(MetricKind.GAUGE), 5d);
+    sink.timer(
+        id(MetricKind.TIMER),
+        2,
+        TimeUnit.MILLISECONDS.toNanos(30),
+        TimeUnit.MILLISECONDS.toNanos(10),
+        TimeUnit.MILLISECONDS.toNanos(20));
+    sink.histogram(id(MetricKind.HISTOGRAM), 100, 10d, 104d, 1024d, 5000d);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      sink.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()),
+          Mockito.never());
+    }
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            CustomEventSink.EVENT_TYPE,
+            Map.of(
+                MetricsTag.TASK_QUEUE, "taskQueue",
+                "metricName", "name",
+                "metricType", "counter",
+                "value", 3L));
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            CustomEventSink.EVENT_TYPE,
+            Map.of(
+                MetricsTag.TASK_QUEUE, "taskQueue",
+                "metricName", "name",
+                "metricType", "gauge",
+                "value", 5d));
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            CustomEventSink.EVENT_TYPE,
+            Map.of(
+                MetricsTag.TASK_QUEUE, "taskQueue",
+                "metricName", "name",
+                "metricType", "timer",
+                "count", 2L,
+                "sum", 30d,
+                "min", 10d,
+                "max", 20d,
+                "mean", 15d));
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            CustomEventSink.EVENT_TYPE,
+            Map.of(
+                MetricsTag.TASK_QUEUE, "taskQueue",
+                "metricName", "name",
+                "metricType", "histogram",
+                "count", 100L,
+                "p50", 10d,
+                "p90", 104d,
+                "p99", 1024d,
+                "max", 5000d));
+    Mockito.verifyNoMoreInteractions(insights);
+  }
+
+  @Test
+  void flush_dropped() {
+    final var sink = new CustomEventSink(1, 10);
+    sink.counter(id(MetricKind.COUNTER), 1L);
+    sink.counter(id(MetricKind.COUNTER), 2L);
+    sink.counter(id(MetricKind.COUNTER), 3L);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      sink.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(CustomEventSink.DROPPED_METRIC, 2), Mockito.times(1));
+    }
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            ArgumentMatchers.eq(CustomEventSink.EVENT_TYPE),
+            ArgumentMatchers.argThat(event -> event.get("value").equals(1L)));
+  }
+
+  @Test
+  void flush_limited() {
+    final var sink = new CustomEventSink(10, 2);
+    sink.counter(id(MetricKind.COUNTER), 1L);
+    sink.counter(id(MetricKind.COUNTER), 2L);
+    sink.counter(id(MetricKind.COUNTER), 3L);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      sink.flush();
+      Mockito.verify(insights, Mockito.times(2))
+          .recordCustomEvent(ArgumentMatchers.eq(CustomEventSink.EVENT_TYPE), ArgumentMatchers.any());
+
+      // the oldest event left is recorded on the next flush
+      sink.flush();
+      Mockito.verify(insights, Mockito.times(1))
+          .recordCustomEvent(
+              ArgumentMatchers.eq(CustomEventSink.EVENT_TYPE),
+              ArgumentMatchers.argThat(event -> event.get("value").equals(3L)));
+      Mockito.verify(insights, Mockito.times(3))
+          .recordCustomEvent(ArgumentMatchers.eq(CustomEventSink.EVENT_TYPE), ArgumentMatchers.any());
+    }
+  }
+
+  @Test
+  void flush_reservedTags() {
+    final var sink = new CustomEventSink(10, 10);
+    sink.counter(
+        new MetricId(
+            new MetricKey(MetricKind.COUNTER, "name", Map.of("value", "tag", "metricName", "tag")),
+            "counter"),
+        3L);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      sink.flush();
+    }
+    Mockito.verify(insights, Mockito.times(1))
+        .recordCustomEvent(
+            CustomEventSink.EVENT_TYPE,
+            Map.of(
+                "tag.value", "tag",
+                "tag.metricName", "tag",
+                "metricName", "name",
+                "metricType", "counter",
+                "value", 3L));
+  }
+}
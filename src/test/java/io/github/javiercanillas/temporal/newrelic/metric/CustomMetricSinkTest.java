@@ -0,0 +1,64 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.NewRelic;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+class CustomMetricSinkTest {
+
+  private static MetricId id(final MetricKind kind) {
+    return new MetricId(new MetricKey(kind, "name", Map.of()), kind.getSegment());
+  }
+
+  private final CustomMetricSink sink = new CustomMetricSink();
+
+  @Test
+  void counter() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      sink.counter(id(MetricKind.COUNTER), Integer.MAX_VALUE + 10L);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter("counter", Integer.MAX_VALUE), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.incrementCounter("counter", 10), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void gauge() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      sink.gauge(id(MetricKind.GAUGE), 5d);
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("gauge", 5f), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void timer() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      sink.timer(
+          id(MetricKind.TIMER),
+          3,
+          TimeUnit.MILLISECONDS.toNanos(60),
+          TimeUnit.MILLISECONDS.toNanos(10),
+          TimeUnit.MILLISECONDS.toNanos(30));
+      mockedNewRelic.verify(() -> NewRelic.recordResponseTimeMetric("timer", 20L), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.incrementCounter("timer/count", 3), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("timer/min", 10f), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("timer/max", 30f), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void histogram() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      sink.histogram(id(MetricKind.HISTOGRAM), 100, 10d, 104d, 1024d, 5000d);
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("histogram/p50", 10f), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("histogram/p90", 104f), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("histogram/p99", 1024f), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric("histogram/max", 5000f), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter("histogram/count", 100), Mockito.times(1));
+    }
+  }
+}
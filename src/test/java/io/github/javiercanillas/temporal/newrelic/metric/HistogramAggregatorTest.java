@@ -0,0 +1,86 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+import org.mockito.Mockito;
+
+import java.util.Map;
+
+class HistogramAggregatorTest {
+
+  @ParameterizedTest
+  @ValueSource(doubles = {0.002d, 0.5d, 1d, 1.1d, 3d, 10d, 99.9d, 1000d, 123456.789d, 1e9d})
+  void bucketIndex(final double value) {
+    final var index = HistogramAggregator.bucketIndex(value);
+    final var upperBound = HistogramAggregator.bucketUpperBound(index);
+    Assertions.assertTrue(upperBound >= value, () -> upperBound + " < " + value);
+    Assertions.assertTrue(upperBound <= value * 1.125d, () -> upperBound + " far from " + value);
+    Assertions.assertTrue(HistogramAggregator.bucketUpperBound(index - 1) <= value);
+  }
+
+  @Test
+  void bucketIndex_outOfRange() {
+    Assertions.assertEquals(0, HistogramAggregator.bucketIndex(0d));
+    Assertions.assertEquals(0, HistogramAggregator.bucketIndex(-1d));
+    Assertions.assertEquals(0, HistogramAggregator.bucketIndex(Double.NaN));
+    Assertions.assertEquals(0, HistogramAggregator.bucketIndex(1e-9d));
+    Assertions.assertEquals(
+        HistogramAggregator.BUCKETS - 1, HistogramAggregator.bucketIndex(Double.MAX_VALUE));
+  }
+
+  @Test
+  void flush() {
+    final var id =
+        new MetricId(new MetricKey(MetricKind.HISTOGRAM, "histogram", Map.of()), "histogram");
+    final var sink = Mockito.mock(MetricSink.class);
+    final var aggregator = new HistogramAggregator();
+    aggregator.record(id, 10d, 50);
+    aggregator.record(id, 100d, 40);
+    aggregator.record(id, 1000d, 9);
+    aggregator.record(id, 5000d, 1);
+    aggregator.record(id, 1d, 0);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).histogram(id, 100L, 10d, 104d, 1024d, 5000d);
+
+    aggregator.flush(sink);
+    Mockito.verifyNoMoreInteractions(sink);
+
+    aggregator.record(id, 2d, 1);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).histogram(id, 1L, 2d, 2d, 2d, 2d);
+  }
+
+  @Test
+  void flush_evictsIdleHistograms() {
+    final var id =
+        new MetricId(new MetricKey(MetricKind.HISTOGRAM, "histogram", Map.of()), "histogram");
+    final var sink = Mockito.mock(MetricSink.class);
+    final var aggregator = new HistogramAggregator();
+    aggregator.record(id, 10d, 1);
+    aggregator.flush(sink);
+    Assertions.assertEquals(1, aggregator.size());
+
+    aggregator.flush(sink);
+    Assertions.assertEquals(0, aggregator.size());
+
+    aggregator.record(id, 20d, 1);
+    Assertions.assertEquals(1, aggregator.size());
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).histogram(id, 1L, 20d, 20d, 20d, 20d);
+  }
+
+  @Test
+  void flush_beyondHighestBucket() {
+    final var id =
+        new MetricId(new MetricKey(MetricKind.HISTOGRAM, "histogram", Map.of()), "histogram");
+    final var sink = Mockito.mock(MetricSink.class);
+    final var aggregator = new HistogramAggregator();
+    aggregator.record(id, 10d, 1);
+    aggregator.record(id, 1e13d, 98);
+    aggregator.record(id, 5e13d, 1);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).histogram(id, 100L, 5e13d, 5e13d, 5e13d, 5e13d);
+  }
+}
@@ -0,0 +1,95 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.Mockito;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+@ExtendWith(MockitoExtension.class)
+class MetricAggregatorTest {
+
+  private static final MetricId COUNTER = id(MetricKind.COUNTER, "counter");
+  private static final MetricId GAUGE = id(MetricKind.GAUGE, "gauge");
+  private static final MetricId TIMER = id(MetricKind.TIMER, "timer");
+
+  @Mock private MetricSink sink;
+
+  private static MetricId id(final MetricKind kind, final String name) {
+    return new MetricId(new MetricKey(kind, name, Map.of()), kind.getSegment() + "/" + name);
+  }
+
+  @Test
+  void flush_counters() {
+    final var aggregator = new MetricAggregator();
+    aggregator.addCounter(COUNTER, 1L);
+    aggregator.addCounter(COUNTER, Integer.MAX_VALUE);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).counter(COUNTER, Integer.MAX_VALUE + 1L);
+
+    // nothing reported on this window
+    aggregator.flush(sink);
+    Mockito.verifyNoMoreInteractions(sink);
+  }
+
+  @Test
+  void flush_gauges() {
+    final var aggregator = new MetricAggregator();
+    aggregator.setGauge(GAUGE, 1d);
+    aggregator.setGauge(GAUGE, 5d);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).gauge(GAUGE, 5d);
+
+    aggregator.flush(sink);
+    Mockito.verifyNoMoreInteractions(sink);
+  }
+
+  @Test
+  void flush_timers() {
+    final var aggregator = new MetricAggregator();
+    aggregator.recordTimer(TIMER, 10L);
+    aggregator.recordTimer(TIMER, 30L);
+    aggregator.recordTimer(TIMER, 20L);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).timer(TIMER, 3L, 60L, 10L, 30L);
+
+    aggregator.flush(sink);
+    Mockito.verifyNoMoreInteractions(sink);
+  }
+
+  @Test
+  void flush_evictsIdleMetrics() {
+    final var aggregator = new MetricAggregator();
+    aggregator.addCounter(COUNTER, 1L);
+    aggregator.setGauge(GAUGE, 1d);
+    aggregator.recordTimer(TIMER, 10L);
+    aggregator.flush(sink);
+    Assertions.assertEquals(3, aggregator.size());
+
+    // nothing reported on this window
+    aggregator.flush(sink);
+    Assertions.assertEquals(0, aggregator.size());
+
+    aggregator.addCounter(COUNTER, 2L);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).counter(COUNTER, 2L);
+  }
+
+  @Test
+  void addCounter_concurrently() throws InterruptedException {
+    final var aggregator = new MetricAggregator();
+    final var executor = Executors.newFixedThreadPool(4);
+    for (int i = 0; i < 1000; i++) {
+      executor.execute(() -> aggregator.addCounter(COUNTER, 1L));
+    }
+    executor.shutdown();
+    executor.awaitTermination(10, TimeUnit.SECONDS);
+    aggregator.flush(sink);
+    Mockito.verify(sink, Mockito.times(1)).counter(COUNTER, 1000L);
+  }
+}
@@ -0,0 +1,64 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import io.temporal.serviceclient.MetricsTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.util.Map;
+
+class MetricNameTemplateTest {
+
+  @Test
+  void format() {
+    final var template = MetricNameTemplate.compile("{namespace}/{task_queue}/{name}");
+    Assertions.assertEquals(
+        "namespace/taskQueue/name",
+        template.format(
+            "name",
+            Map.of(
+                MetricsTag.NAMESPACE, "namespace",
+                MetricsTag.TASK_QUEUE, "taskQueue",
+                MetricsTag.WORKFLOW_TYPE, "workflowType")));
+    Assertions.assertEquals(
+        "none/taskQueue/name",
+        template.format("name", Map.of(MetricsTag.TASK_QUEUE, "taskQueue")));
+    Assertions.assertEquals("none/none/name", template.format("name", null));
+  }
+
+  @Test
+  void format_literalsAndPlaceholder() {
+    final var template = MetricNameTemplate.compile("tq:{task_queue}-{name}.total", "_");
+    Assertions.assertEquals(
+        "tq:taskQueue-name.total",
+        template.format("name", Map.of(MetricsTag.TASK_QUEUE, "taskQueue")));
+    Assertions.assertEquals("tq:_-name.total", template.format("name", Map.of()));
+    Assertions.assertEquals("_", template.getPlaceholder());
+    Assertions.assertEquals("tq:{task_queue}-{name}.total", template.getPattern());
+  }
+
+  @Test
+  void format_default() {
+    Assertions.assertEquals(
+        MetricScopeReporter.ALL_NONE.substring(1) + "name",
+        MetricNameTemplate.DEFAULT.format("name", Map.of()));
+  }
+
+  @Test
+  void equalsAndHashCode() {
+    final var template = MetricNameTemplate.compile("{task_queue}/{name}");
+    Assertions.assertEquals(template, MetricNameTemplate.compile("{task_queue}/{name}", "none"));
+    Assertions.assertEquals(
+        template.hashCode(), MetricNameTemplate.compile("{task_queue}/{name}").hashCode());
+    Assertions.assertNotEquals(template, MetricNameTemplate.compile("{task_queue}/{name}", "-"));
+    Assertions.assertNotEquals(template, MetricNameTemplate.compile("{namespace}/{name}"));
+  }
+
+  @ParameterizedTest
+  @ValueSource(strings = {"{task_queue}", "{name", "name}", "{{name}}", "{}/{name}", "}{name}"})
+  void compile_invalid(final String pattern) {
+    Assertions.assertThrows(
+        IllegalArgumentException.class, () -> MetricNameTemplate.compile(pattern));
+  }
+}
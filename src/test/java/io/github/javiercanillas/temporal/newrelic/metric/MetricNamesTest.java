@@ -0,0 +1,52 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.NewRelic;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+class MetricNamesTest {
+
+  @Test
+  void type() {
+    final var metricNames = new MetricNames(2);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      Assertions.assertEquals("type1", metricNames.type("type1"));
+      Assertions.assertEquals("type2", metricNames.type("type2"));
+      Assertions.assertEquals("type1", metricNames.type("type1"));
+      Assertions.assertEquals(MetricNames.OTHER, metricNames.type("type3"));
+      Assertions.assertEquals(MetricNames.OTHER, metricNames.type("type4"));
+      Assertions.assertEquals(MetricNames.OTHER, metricNames.type("type3"));
+      Assertions.assertEquals("type2", metricNames.type("type2"));
+      Assertions.assertEquals(MetricNames.UNKNOWN, metricNames.type(null));
+      // distinct suppressed types are counted once each
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(MetricNames.SUPPRESSED_METRIC + MetricNames.TYPE, 1),
+          Mockito.times(2));
+    }
+  }
+
+  @Test
+  void taskQueue() {
+    final var metricNames = new MetricNames(1);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      // types and task queues are limited apart
+      Assertions.assertEquals("type", metricNames.type("type"));
+      Assertions.assertEquals("queue1", metricNames.taskQueue("queue1"));
+      Assertions.assertEquals(MetricNames.OTHER, metricNames.taskQueue("queue2"));
+      Assertions.assertEquals(MetricNames.UNKNOWN, metricNames.taskQueue(null));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(MetricNames.SUPPRESSED_METRIC + MetricNames.TASK_QUEUE, 1),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void shared() {
+    Assertions.assertSame(MetricNames.shared(), MetricNames.shared());
+    Assertions.assertEquals(MetricNames.DEFAULT_MAX_TYPES, MetricNames.shared().getMaxTypes());
+    Assertions.assertEquals(MetricScopeReporter.METRIC_BASE, MetricNames.BASE);
+    Assertions.assertThrows(IllegalArgumentException.class, () -> new MetricNames(0));
+  }
+}
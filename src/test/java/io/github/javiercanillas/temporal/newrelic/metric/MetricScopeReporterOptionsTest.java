@@ -0,0 +1,31 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+
+class MetricScopeReporterOptionsTest {
+
+  @Test
+  void defaults() {
+    final var options = MetricScopeReporterOptions.getDefaultInstance();
+    Assertions.assertEquals(Duration.ofSeconds(60), options.getReportInterval());
+    Assertions.assertEquals("", options.getPrefix());
+    Assertions.assertTrue(options.isShared());
+    Assertions.assertEquals(
+        MetricScopeReporter.DEFAULT_NAME_CACHE_SIZE, options.getNameCacheSize());
+    Assertions.assertEquals(0, options.getTagCardinalityLimit());
+  }
+
+  @Test
+  void builder() {
+    Assertions.assertThrows(
+        NullPointerException.class,
+        () -> MetricScopeReporterOptions.builder().reportInterval(null).build());
+    final var options =
+        MetricScopeReporterOptions.getDefaultInstance().toBuilder().shared(false).build();
+    Assertions.assertFalse(options.isShared());
+    Assertions.assertNotEquals(MetricScopeReporterOptions.getDefaultInstance(), options);
+  }
+}
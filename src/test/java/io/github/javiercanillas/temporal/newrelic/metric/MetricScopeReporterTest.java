@@ -1,5 +1,7 @@
 package io.github.javiercanillas.temporal.newrelic.metric;
 
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.Insights;
 import com.newrelic.api.agent.NewRelic;
 import com.uber.m3.util.Duration;
 import io.temporal.serviceclient.MetricsTag;
@@ -8,11 +10,14 @@ import org.junit.jupiter.api.Test;
 import org.mockito.ArgumentMatchers;
 import org.mockito.Mockito;
 
+import java.util.HashMap;
 import java.util.Map;
+import java.util.Set;
 
 import static io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter.ALL_NONE;
 import static io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter.COUNTER_METRIC;
 import static io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter.GAUGE_METRIC;
+import static io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter.HISTOGRAM_METRIC;
 import static io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter.TIMER_METRIC;
 
 class MetricScopeReporterTest {
@@ -105,6 +110,229 @@ class MetricScopeReporterTest {
     }
   }
 
+  @Test
+  void reportCounter_cachesNames() {
+    final var reporter = MetricScopeReporter.instance();
+    final var tags = new HashMap<>(FULL_TAGS);
+    tags.put(MetricsTag.NAMESPACE, "cachedNamespace");
+    final var expected =
+        COUNTER_METRIC + FULL_TAGS_STRING.replace("/namespace/", "/cachedNamespace/") + "cached";
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      final var misses = reporter.getNameCache().getMisses();
+      final var hits = reporter.getNameCache().getHits();
+      reporter.reportCounter("cached", tags, 1L);
+      reporter.reportCounter("cached", Map.copyOf(tags), 1L);
+      // mutating the reported map must not alter the cached entry
+      tags.put(MetricsTag.NAMESPACE, "otherNamespace");
+      reporter.reportCounter("cached", tags, 1L);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(Mockito.eq(expected), Mockito.eq(1)), Mockito.times(2));
+      Assertions.assertEquals(misses + 2, reporter.getNameCache().getMisses());
+      Assertions.assertEquals(hits + 1, reporter.getNameCache().getHits());
+    }
+  }
+
+  @Test
+  void reportCounter_limitsTagCardinality() {
+    final var reporter =
+        new MetricScopeReporter(
+            MetricScopeReporterOptions.builder()
+                .limitedTags(Set.of(MetricsTag.WORKFLOW_TYPE))
+                .tagCardinalityLimit(1)
+                .build());
+    final var tags = new HashMap<>(FULL_TAGS);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      reporter.reportCounter("name", tags, 1L);
+      tags.put(MetricsTag.WORKFLOW_TYPE, "anotherWorkflowType");
+      reporter.reportCounter("name", tags, 1L);
+      tags.put(MetricsTag.WORKFLOW_TYPE, "yetAnotherWorkflowType");
+      reporter.reportCounter("name", tags, 1L);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(COUNTER_METRIC + FULL_TAGS_STRING + "name", 1),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  COUNTER_METRIC + FULL_TAGS_STRING.replace("/workflowType/", "/other/") + "name",
+                  1),
+          Mockito.times(2));
+
+      reporter.flush();
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  TagCardinalityLimiter.SUPPRESSED_METRIC + MetricsTag.WORKFLOW_TYPE, 2),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void reportCounter_suppressedValuesCachedApart() {
+    final var reporter =
+        new MetricScopeReporter(
+            MetricScopeReporterOptions.builder()
+                .limitedTags(Set.of(MetricsTag.WORKFLOW_TYPE))
+                .tagCardinalityLimit(1)
+                .build());
+    final var tags = new HashMap<>(FULL_TAGS);
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      for (int i = 0; i < 100; i++) {
+        tags.put(MetricsTag.WORKFLOW_TYPE, "workflowType" + i);
+        reporter.reportCounter("name", tags, 1L);
+      }
+      // the accepted value and the limited one
+      Assertions.assertEquals(2, reporter.getNameCache().size());
+      Assertions.assertEquals(99, reporter.getSuppressedNameCache().size());
+
+      // suppressed tags reported again are found on their own cache
+      final var hits = reporter.getSuppressedNameCache().getHits();
+      reporter.reportCounter("name", tags, 1L);
+      Assertions.assertEquals(hits + 1, reporter.getSuppressedNameCache().getHits());
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  COUNTER_METRIC + FULL_TAGS_STRING.replace("/workflowType/", "/other/") + "name",
+                  1),
+          Mockito.times(100));
+    }
+  }
+
+  @Test
+  void report_nameTemplates() {
+    final var reporter =
+        new MetricScopeReporter(
+            MetricScopeReporterOptions.builder()
+                .counterNameTemplate(MetricNameTemplate.compile("{task_queue}/{name}"))
+                .gaugeNameTemplate(MetricNameTemplate.compile("{name}/{namespace}", "-"))
+                .build());
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      reporter.reportCounter("name", FULL_TAGS, 1L);
+      reporter.reportGauge("name", Map.of(), 1d);
+      reporter.reportTimer("name", Map.of(), Duration.ofMillis(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(COUNTER_METRIC + "/taskQueue/name", 1), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordMetric(GAUGE_METRIC + "/name/-", 1f), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(TIMER_METRIC + ALL_NONE + "name", 1L),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void report_eventsAggregatedByTags() {
+    final var reporter =
+        new MetricScopeReporter(
+            MetricScopeReporterOptions.builder()
+                .reportingMode(ReportingMode.EVENTS)
+                .counterNameTemplate(MetricNameTemplate.compile("{name}"))
+                .build());
+    final var agent = Mockito.mock(Agent.class);
+    final var insights = Mockito.mock(Insights.class);
+    Mockito.doReturn(insights).when(agent).getInsights();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      reporter.reportCounter("name", Map.of("custom", "a"), 1L);
+      reporter.reportCounter("name", Map.of("custom", "b"), 2L);
+      reporter.flush();
+      Mockito.verify(insights, Mockito.times(2))
+          .recordCustomEvent(ArgumentMatchers.eq("TemporalMetric"), ArgumentMatchers.any());
+    }
+  }
+
+  @Test
+  void reportCounter_biggerThanInt() {
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      MetricScopeReporter.instance().reportCounter("name", EMPTY_TAGS, Integer.MAX_VALUE + 1L);
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(COUNTER_METRIC + ALL_NONE + "name", Integer.MAX_VALUE),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(COUNTER_METRIC + ALL_NONE + "name", 1),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void report_aggregated() {
+    final var reporter =
+        new MetricScopeReporter(MetricScopeReporterOptions.builder().aggregate(true).build());
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      reporter.reportCounter("name", FULL_TAGS, 1L);
+      reporter.reportCounter("name", FULL_TAGS, 2L);
+      reporter.reportGauge("name", FULL_TAGS, 1d);
+      reporter.reportTimer("name", FULL_TAGS, Duration.ofMillis(1000));
+      mockedNewRelic.verifyNoInteractions();
+
+      reporter.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(COUNTER_METRIC + FULL_TAGS_STRING + "name", 3),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordMetric(GAUGE_METRIC + FULL_TAGS_STRING + "name", 1f),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(TIMER_METRIC + FULL_TAGS_STRING + "name", 1000L),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void report_aggregatedTimersSentOnce() {
+    final var reporter =
+        new MetricScopeReporter(MetricScopeReporterOptions.builder().aggregate(true).build());
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      reporter.reportTimer("name", FULL_TAGS, Duration.ofMillis(10));
+      reporter.reportTimer("name", FULL_TAGS, Duration.ofMillis(20));
+      reporter.reportTimer("name", FULL_TAGS, Duration.ofMillis(40));
+      reporter.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(TIMER_METRIC + FULL_TAGS_STRING + "name", 23L),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordResponseTimeMetric(Mockito.anyString(), Mockito.anyLong()),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(TIMER_METRIC + FULL_TAGS_STRING + "name/count", 3),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordMetric(TIMER_METRIC + FULL_TAGS_STRING + "name/min", 10f),
+          Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.recordMetric(TIMER_METRIC + FULL_TAGS_STRING + "name/max", 40f),
+          Mockito.times(1));
+    }
+  }
+
+  @Test
+  void report_events() {
+    final var reporter =
+        new MetricScopeReporter(
+            MetricScopeReporterOptions.builder().reportingMode(ReportingMode.EVENTS).build());
+    final var agent = Mockito.mock(Agent.class);
+    final var insights = Mockito.mock(Insights.class);
+    Mockito.doReturn(insights).when(agent).getInsights();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      mockedNewRelic.when(NewRelic::getAgent).thenReturn(agent);
+      reporter.reportCounter("name", FULL_TAGS, 1L);
+      reporter.reportCounter("name", FULL_TAGS, 2L);
+      Mockito.verifyNoInteractions(insights);
+
+      reporter.flush();
+      Mockito.verify(insights, Mockito.times(1))
+          .recordCustomEvent(
+              ArgumentMatchers.eq("TemporalMetric"),
+              ArgumentMatchers.argThat(
+                  event ->
+                      event.get("value").equals(3L)
+                          && event.get("metricName").equals("name")
+                          && event.get(MetricsTag.TASK_QUEUE).equals("taskQueue")));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()),
+          Mockito.never());
+    }
+  }
+
   @Test
   void reportHistogramValueSamples() {
     try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
@@ -124,6 +352,30 @@ class MetricScopeReporterTest {
     }
   }
 
+  @Test
+  void reportHistogramSamples_flush() {
+    final var reporter = new MetricScopeReporter(MetricScopeReporterOptions.getDefaultInstance());
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      reporter.reportHistogramValueSamples("values", EMPTY_TAGS, null, 1d, 10d, 3);
+      reporter.reportHistogramValueSamples("values", EMPTY_TAGS, null, 10d, Double.MAX_VALUE, 1);
+      reporter.reportHistogramDurationSamples(
+          "durations", EMPTY_TAGS, null, Duration.ofMillis(1), Duration.ofMillis(100), 2);
+      mockedNewRelic.verifyNoInteractions();
+
+      reporter.flush();
+      final var values = HISTOGRAM_METRIC + ALL_NONE + "values";
+      mockedNewRelic.verify(() -> NewRelic.recordMetric(values + "/p50", 10f), Mockito.times(1));
+      mockedNewRelic.verify(() -> NewRelic.recordMetric(values + "/max", 10f), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(values + "/count", 4), Mockito.times(1));
+      final var durations = HISTOGRAM_METRIC + ALL_NONE + "durations";
+      mockedNewRelic.verify(
+          () -> NewRelic.recordMetric(durations + "/p99", 100f), Mockito.times(1));
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(durations + "/count", 2), Mockito.times(1));
+    }
+  }
+
   @Test
   void capabilities() {
     Assertions.assertNotNull(MetricScopeReporter.instance().capabilities());
@@ -136,7 +388,61 @@ class MetricScopeReporterTest {
 
   @Test
   void getScope() {
-    Assertions.assertNotNull(MetricScopeReporter.getScope());
+    try {
+      final var scope = MetricScopeReporter.getScope();
+      Assertions.assertNotNull(scope);
+      Assertions.assertSame(scope, MetricScopeReporter.getScope());
+      Assertions.assertSame(
+          scope,
+          MetricScopeReporter.getScope(
+              MetricScopeReporterOptions.builder()
+                  .reportInterval(java.time.Duration.ofSeconds(1))
+                  .build()));
+    } finally {
+      MetricScopeReporter.closeScope();
+    }
+  }
+
+  @Test
+  void getScope_notShared() throws Exception {
+    final var options =
+        MetricScopeReporterOptions.builder().shared(false).prefix("prefix").build();
+    try (var scope = MetricScopeReporter.getScope(options);
+        var anotherScope = MetricScopeReporter.getScope(options)) {
+      Assertions.assertNotSame(scope, anotherScope);
+    }
+  }
+
+  @Test
+  void getScope_async() throws Exception {
+    final var options =
+        MetricScopeReporterOptions.builder().shared(false).async(true).asyncQueueSize(16).build();
+    final var scope = MetricScopeReporter.getScope(options);
+    scope.counter("counter").inc(1L);
+    scope.close();
+    Assertions.assertTrue(
+        Thread.getAllStackTraces().keySet().stream()
+            .noneMatch(
+                thread ->
+                    thread.isAlive()
+                        && AsyncStatsReporter.THREAD_NAME.equals(thread.getName())));
+  }
+
+  @Test
+  void closeScope() {
+    final var scope = MetricScopeReporter.getScope();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      scope.counter("closed").inc(2);
+      MetricScopeReporter.closeScope();
+      // closing reports pending metrics once more
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  Mockito.eq(COUNTER_METRIC + ALL_NONE + "closed"), Mockito.eq(2)),
+          Mockito.times(1));
+    }
+    Assertions.assertNotSame(scope, MetricScopeReporter.getScope());
+    MetricScopeReporter.closeScope();
   }
 
   @Test
@@ -0,0 +1,88 @@
+package io.github.javiercanillas.temporal.newrelic.metric;
+
+import com.newrelic.api.agent.NewRelic;
+import io.temporal.serviceclient.MetricsTag;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentMatchers;
+import org.mockito.Mockito;
+
+import java.util.Map;
+import java.util.Set;
+
+class TagCardinalityLimiterTest {
+
+  @Test
+  void limit() {
+    final var limiter = new TagCardinalityLimiter(Set.of(MetricsTag.WORKFLOW_TYPE), 2);
+    final var first = Map.of(MetricsTag.WORKFLOW_TYPE, "a", MetricsTag.TASK_QUEUE, "q1");
+    Assertions.assertSame(first, limiter.limit(first));
+    final var second = Map.of(MetricsTag.WORKFLOW_TYPE, "b", MetricsTag.TASK_QUEUE, "q2");
+    Assertions.assertSame(second, limiter.limit(second));
+
+    final var third = Map.of(MetricsTag.WORKFLOW_TYPE, "c", MetricsTag.TASK_QUEUE, "q3");
+    Assertions.assertEquals(
+        Map.of(
+            MetricsTag.WORKFLOW_TYPE, TagCardinalityLimiter.OTHER, MetricsTag.TASK_QUEUE, "q3"),
+        limiter.limit(third));
+    Assertions.assertEquals(
+        Map.of(MetricsTag.WORKFLOW_TYPE, "c", MetricsTag.TASK_QUEUE, "q3"), third);
+
+    // already accepted values are kept
+    Assertions.assertSame(first, limiter.limit(first));
+    Assertions.assertEquals(1L, limiter.getSuppressed(MetricsTag.WORKFLOW_TYPE));
+    Assertions.assertEquals(0L, limiter.getSuppressed(MetricsTag.TASK_QUEUE));
+  }
+
+  @Test
+  void limit_countsDistinctValues() {
+    final var limiter = new TagCardinalityLimiter(Set.of(MetricsTag.EXCEPTION), 1);
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "a"));
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "b"));
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "b"));
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "c"));
+    Assertions.assertEquals(2L, limiter.getSuppressed(MetricsTag.EXCEPTION));
+  }
+
+  @Test
+  void limit_singleValue() {
+    final var limiter = new TagCardinalityLimiter("prefix/", Set.of(MetricsTag.EXCEPTION), 1);
+    Assertions.assertEquals("a", limiter.limit(MetricsTag.EXCEPTION, "a"));
+    Assertions.assertEquals(
+        TagCardinalityLimiter.OTHER, limiter.limit(MetricsTag.EXCEPTION, "b"));
+    Assertions.assertEquals("b", limiter.limit(MetricsTag.TASK_QUEUE, "b"));
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      limiter.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter("prefix/" + MetricsTag.EXCEPTION, 1), Mockito.times(1));
+    }
+  }
+
+  @Test
+  void flush() {
+    final var limiter = new TagCardinalityLimiter(Set.of(MetricsTag.EXCEPTION), 1);
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "a"));
+    limiter.limit(Map.of(MetricsTag.EXCEPTION, "b"));
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      limiter.flush();
+      mockedNewRelic.verify(
+          () ->
+              NewRelic.incrementCounter(
+                  TagCardinalityLimiter.SUPPRESSED_METRIC + MetricsTag.EXCEPTION, 1),
+          Mockito.times(1));
+
+      limiter.flush();
+      mockedNewRelic.verify(
+          () -> NewRelic.incrementCounter(ArgumentMatchers.anyString(), ArgumentMatchers.anyInt()),
+          Mockito.times(1));
+    }
+    Assertions.assertEquals(0L, limiter.getSuppressed(MetricsTag.EXCEPTION));
+  }
+
+  @Test
+  void constructor_invalidLimit() {
+    Assertions.assertThrows(
+        IllegalArgumentException.class,
+        () -> new TagCardinalityLimiter(Set.of(MetricsTag.EXCEPTION), 0));
+  }
+}
@@ -0,0 +1,505 @@
+package io.github.javiercanillas.temporal.newrelic.testing;
+
+import com.newrelic.api.agent.Agent;
+import com.newrelic.api.agent.Headers;
+import com.newrelic.api.agent.Insights;
+import com.newrelic.api.agent.MetricAggregator;
+import com.newrelic.api.agent.NewRelic;
+import com.newrelic.api.agent.Segment;
+import com.newrelic.api.agent.Trace;
+import com.newrelic.api.agent.TraceMetadata;
+import com.newrelic.api.agent.Transaction;
+import net.bytebuddy.agent.ByteBuddyAgent;
+import net.bytebuddy.agent.builder.AgentBuilder;
+import net.bytebuddy.agent.builder.ResettableClassFileTransformer;
+import net.bytebuddy.asm.Advice;
+import net.bytebuddy.description.type.TypeDescription;
+import net.bytebuddy.matcher.ElementMatchers;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Method;
+import java.lang.reflect.Proxy;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A stand-in NewRelic {@link Agent} keeping in memory what would have been sent to NewRelic:
+ * transactions (with their segments, accepted distributed trace headers and errors), metrics,
+ * custom events and errors. It is thread safe and cheap enough to run the interceptors, the
+ * propagator and the metric reporter under realistic concurrency.
+ * <br>
+ * {@link #install()} instruments the {@link NewRelic} static methods so they are handled by the
+ * installed agent from any thread, as the real agent does (unlike {@code Mockito.mockStatic},
+ * which only works on the thread that created the mock), and the methods of this library annotated
+ * with {@link Trace}, which start a transaction on entry and finish it on exit, unless one is
+ * already running on the thread (every {@link Trace} method of this library is a dispatcher).
+ * Closing the installed agent restores the original classes, so tests running afterwards on the
+ * same JVM, including the ones using {@code Mockito.mockStatic}, see them untouched.
+ * <br>
+ * Calls are recorded once whichever way they come: the {@link NewRelic} static methods are
+ * recorded on entry, and the {@link MetricAggregator} handed over by the agent only records calls
+ * made outside them, so metrics are not counted twice by API versions whose static methods
+ * delegate to it.
+ * <pre>{@code
+ * try (var agent = InMemoryAgent.install()) {
+ *   ...
+ *   Assertions.assertEquals(1, agent.getTransactions().size());
+ * }
+ * }</pre>
+ */
+public final class InMemoryAgent implements AutoCloseable {
+
+  private static final String INSTRUMENTED_PACKAGE = "io.github.javiercanillas.temporal.newrelic.";
+  private static final Object LOCK = new Object();
+  /* guarded by LOCK, set while the classes are instrumented */
+  private static ResettableClassFileTransformer transformer;
+  private static volatile InMemoryAgent installed;
+  /* set while a NewRelic static method runs on the thread, so its delegates do not record it again */
+  private static final ThreadLocal<Boolean> IN_STATIC_CALL = ThreadLocal.withInitial(() -> false);
+
+  private final ThreadLocal<RecordedTransaction> current = new ThreadLocal<>();
+  private final Queue<RecordedTransaction> transactions = new ConcurrentLinkedQueue<>();
+  private final Map<String, MetricStats> metrics = new ConcurrentHashMap<>();
+  private final Queue<RecordedEvent> customEvents = new ConcurrentLinkedQueue<>();
+  private final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+  private final Agent agent;
+  private final Transaction noTransaction;
+  private final MetricAggregator metricAggregator;
+  private final Insights insights;
+  private final TraceMetadata traceMetadata;
+
+  private InMemoryAgent() {
+    this.agent = proxy(Agent.class, this::agentCall);
+    this.noTransaction = proxy(Transaction.class, (method, args) -> null);
+    this.metricAggregator = proxy(MetricAggregator.class, (method, args) -> {
+      if (!IN_STATIC_CALL.get()) {
+        onStaticCall(method.getName(), args);
+      }
+      return null;
+    });
+    this.insights = proxy(Insights.class, (method, args) -> {
+      if ("recordCustomEvent".equals(method.getName())) {
+        @SuppressWarnings("unchecked") final var attributes = (Map<String, ?>) args[1];
+        customEvents.add(new RecordedEvent((String) args[0], attributes));
+      }
+      return null;
+    });
+    this.traceMetadata = proxy(TraceMetadata.class, (method, args) -> {
+      final var transaction = current.get();
+      if (transaction == null) {
+        return "";
+      }
+      return "getSpanId".equals(method.getName()) ? transaction.spanId : transaction.traceId;
+    });
+  }
+
+  /**
+   * Installs a new agent behind {@link NewRelic}, replacing the previous one, if any.
+   *
+   * @return the installed agent, to close once done
+   */
+  public static InMemoryAgent install() {
+    synchronized (LOCK) {
+      if (transformer == null) {
+        transformer = instrument();
+      }
+      final var agent = new InMemoryAgent();
+      installed = agent;
+      return agent;
+    }
+  }
+
+  /** Uninstalls this agent, if it is still the installed one, restoring the original classes. */
+  @Override
+  public void close() {
+    synchronized (LOCK) {
+      if (installed != this) {
+        return;
+      }
+      installed = null;
+      transformer.reset(
+          ByteBuddyAgent.getInstrumentation(), AgentBuilder.RedefinitionStrategy.RETRANSFORMATION);
+      transformer = null;
+    }
+  }
+
+  /** Returns the {@link Agent} handed over by {@link NewRelic#getAgent()}. */
+  public Agent getAgent() {
+    return agent;
+  }
+
+  /** Returns finished transactions, in the order they finished. */
+  public List<RecordedTransaction> getTransactions() {
+    return List.copyOf(transactions);
+  }
+
+  /** Returns the stats of a metric, never null. */
+  public MetricStats getMetric(final String name) {
+    return metrics.getOrDefault(name, MetricStats.EMPTY);
+  }
+
+  /** Returns every recorded metric by name. */
+  public Map<String, MetricStats> getMetrics() {
+    return Map.copyOf(metrics);
+  }
+
+  /** Returns recorded custom events, in the order they were recorded. */
+  public List<RecordedEvent> getCustomEvents() {
+    return List.copyOf(customEvents);
+  }
+
+  /** Returns noticed errors, in the order they were noticed. */
+  public List<Throwable> getErrors() {
+    return List.copyOf(errors);
+  }
+
+  private static ResettableClassFileTransformer instrument() {
+    return new AgentBuilder.Default()
+        .disableClassFormatChanges()
+        .with(AgentBuilder.RedefinitionStrategy.RETRANSFORMATION)
+        .type(ElementMatchers.is(NewRelic.class))
+        .transform(
+            (builder, type, classLoader, module, domain) ->
+                builder
+                    .visit(Advice.to(GetAgentAdvice.class).on(ElementMatchers.named("getAgent")))
+                    .visit(
+                        Advice.to(StaticCallAdvice.class)
+                            .on(
+                                ElementMatchers.isStatic()
+                                    .and(ElementMatchers.isPublic())
+                                    .and(ElementMatchers.returns(TypeDescription.VOID)))))
+        .type(
+            ElementMatchers.nameStartsWith(INSTRUMENTED_PACKAGE)
+                .and(ElementMatchers.declaresMethod(ElementMatchers.isAnnotatedWith(Trace.class))))
+        .transform(
+            (builder, type, classLoader, module, domain) ->
+                builder.visit(
+                    Advice.to(DispatcherAdvice.class).on(ElementMatchers.isAnnotatedWith(Trace.class))))
+        .installOn(ByteBuddyAgent.install());
+  }
+
+  /** Called from instrumented {@link NewRelic#getAgent()}. */
+  public static Agent installedAgent() {
+    final var agent = installed;
+    return agent != null ? agent.agent : null;
+  }
+
+  /**
+   * Called on entry of instrumented {@link NewRelic} static methods, returns whether it recorded
+   * the call, which is not done for calls made from another one.
+   */
+  public static boolean enterStaticCall(final String method, final Object[] args) {
+    final var agent = installed;
+    if (agent == null || IN_STATIC_CALL.get()) {
+      return false;
+    }
+    IN_STATIC_CALL.set(true);
+    agent.onStaticCall(method, args);
+    return true;
+  }
+
+  /** Called on exit of instrumented {@link NewRelic} static methods that recorded the call. */
+  public static void exitStaticCall() {
+    IN_STATIC_CALL.remove();
+  }
+
+  /** Called on entry of instrumented {@link Trace} methods, returns whether it started a transaction. */
+  public static boolean startTransaction() {
+    final var agent = installed;
+    if (agent == null || agent.current.get() != null) {
+      return false;
+    }
+    agent.current.set(new RecordedTransaction());
+    return true;
+  }
+
+  /** Called on exit of instrumented {@link Trace} methods that started a transaction. */
+  public static void finishTransaction() {
+    final var agent = installed;
+    if (agent != null) {
+      final var transaction = agent.current.get();
+      agent.current.remove();
+      if (transaction != null) {
+        agent.transactions.add(transaction);
+      }
+    }
+  }
+
+  private void onStaticCall(final String method, final Object[] args) {
+    final var transaction = current.get();
+    switch (method) {
+      case "recordMetric":
+        metric((String) args[0], ((Number) args[1]).doubleValue());
+        break;
+      case "recordResponseTimeMetric":
+        metric((String) args[0], ((Number) args[1]).doubleValue());
+        break;
+      case "incrementCounter":
+        metric((String) args[0], args.length > 1 ? ((Number) args[1]).doubleValue() : 1d);
+        break;
+      case "noticeError":
+        final var error =
+            args[0] instanceof Throwable ? (Throwable) args[0] : new Exception(String.valueOf(args[0]));
+        errors.add(error);
+        if (transaction != null) {
+          transaction.errors.add(error);
+        }
+        break;
+      case "setTransactionName":
+        if (transaction != null) {
+          transaction.category = (String) args[0];
+          transaction.name = (String) args[1];
+        }
+        break;
+      case "ignoreTransaction":
+        if (transaction != null) {
+          transaction.ignored = true;
+        }
+        break;
+      case "addCustomParameter":
+        if (transaction != null) {
+          transaction.attributes.put((String) args[0], args[1]);
+        }
+        break;
+      default:
+        break;
+    }
+  }
+
+  private void metric(final String name, final double value) {
+    metrics.computeIfAbsent(name, key -> new MetricStats()).record(value);
+  }
+
+  private Object agentCall(final Method method, final Object[] args) {
+    switch (method.getName()) {
+      case "getTransaction":
+        final var transaction = current.get();
+        return transaction != null ? transaction.proxy : noTransaction;
+      case "getMetricAggregator":
+        return metricAggregator;
+      case "getInsights":
+        return insights;
+      case "getTraceMetadata":
+        return traceMetadata;
+      case "getLinkingMetadata":
+        return Collections.emptyMap();
+      default:
+        return proxy(method.getReturnType(), (m, a) -> null);
+    }
+  }
+
+  private interface Handler {
+    Object handle(Method method, Object[] args) throws Throwable;
+  }
+
+  /*
+   * Agent API interfaces grow on every release, so they are implemented with proxies answering
+   * the methods this library uses, and default values for the rest.
+   */
+  private static <T> T proxy(final Class<T> type, final Handler handler) {
+    if (!type.isInterface()) {
+      return null;
+    }
+    final Object instance =
+        Proxy.newProxyInstance(
+            type.getClassLoader(),
+            new Class<?>[] {type},
+            (proxy, method, args) -> {
+              if (method.getDeclaringClass() == Object.class) {
+                return method.invoke(handler, args);
+              }
+              final var result = handler.handle(method, args == null ? new Object[0] : args);
+              return result != null ? result : defaultValue(method.getReturnType());
+            });
+    return type.cast(instance);
+  }
+
+  private static Object defaultValue(final Class<?> type) {
+    if (!type.isPrimitive() || type == void.class) {
+      return null;
+    }
+    return Array.get(Array.newInstance(type, 1), 0);
+  }
+
+  /** A transaction, from the entry to the exit of a {@link Trace} method. */
+  public static final class RecordedTransaction {
+    private final String traceId = UUID.randomUUID().toString().replace("-", "");
+    private final String spanId = traceId.substring(0, 16);
+    private final Queue<Map<String, List<String>>> acceptedHeaders = new ConcurrentLinkedQueue<>();
+    private final Queue<String> segments = new ConcurrentLinkedQueue<>();
+    private final Queue<Throwable> errors = new ConcurrentLinkedQueue<>();
+    private final Map<String, Object> attributes = new ConcurrentHashMap<>();
+    private final Transaction proxy;
+    private volatile String category;
+    private volatile String name;
+    private volatile boolean ignored;
+
+    private RecordedTransaction() {
+      this.proxy = proxy(Transaction.class, this::call);
+    }
+
+    private Object call(final Method method, final Object[] args) {
+      switch (method.getName()) {
+        case "ignore":
+          this.ignored = true;
+          return null;
+        case "setTransactionName":
+          this.category = (String) args[2];
+          this.name = String.join("/", (String[]) args[3]);
+          return true;
+        case "acceptDistributedTraceHeaders":
+          this.acceptedHeaders.add(toMap((Headers) args[1]));
+          return null;
+        case "insertDistributedTraceHeaders":
+          final var headers = (Headers) args[0];
+          headers.setHeader("traceparent", "00-" + traceId + "-" + spanId + "-01");
+          headers.setHeader("newrelic", traceId);
+          return null;
+        case "startSegment":
+          final var segmentName = args.length > 1 ? args[0] + "/" + args[1] : (String) args[0];
+          return proxy(Segment.class, (m, a) -> {
+            if ("end".equals(m.getName()) || "endAsync".equals(m.getName())) {
+              this.segments.add(segmentName);
+            }
+            return null;
+          });
+        default:
+          return proxy(method.getReturnType(), (m, a) -> null);
+      }
+    }
+
+    private static Map<String, List<String>> toMap(final Headers headers) {
+      final var map = new HashMap<String, List<String>>();
+      final Collection<String> names = headers.getHeaderNames();
+      names.forEach(name -> map.put(name, new ArrayList<>(headers.getHeaders(name))));
+      return map;
+    }
+
+    public String getCategory() {
+      return category;
+    }
+
+    public String getName() {
+      return name;
+    }
+
+    public boolean isIgnored() {
+      return ignored;
+    }
+
+    public List<Map<String, List<String>>> getAcceptedHeaders() {
+      return List.copyOf(acceptedHeaders);
+    }
+
+    /** Returns ended segments, as {@code category/name}. */
+    public List<String> getSegments() {
+      return List.copyOf(segments);
+    }
+
+    public List<Throwable> getErrors() {
+      return List.copyOf(errors);
+    }
+
+    public Map<String, Object> getAttributes() {
+      return Map.copyOf(attributes);
+    }
+  }
+
+  /** Count and total of the values recorded on a metric. */
+  public static final class MetricStats {
+    private static final MetricStats EMPTY = new MetricStats();
+
+    private final LongAdder count = new LongAdder();
+    private final DoubleAdder total = new DoubleAdder();
+
+    private void record(final double value) {
+      count.increment();
+      total.add(value);
+    }
+
+    public long getCount() {
+      return count.sum();
+    }
+
+    public double getTotal() {
+      return total.sum();
+    }
+  }
+
+  /** A custom event. */
+  public static final class RecordedEvent {
+    private final String type;
+    private final Map<String, ?> attributes;
+
+    private RecordedEvent(final String type, final Map<String, ?> attributes) {
+      this.type = type;
+      this.attributes = Map.copyOf(attributes);
+    }
+
+    public String getType() {
+      return type;
+    }
+
+    public Map<String, ?> getAttributes() {
+      return attributes;
+    }
+  }
+
+  /** Inlined on exit of {@link NewRelic#getAgent()}. */
+  public static final class GetAgentAdvice {
+    private GetAgentAdvice() {}
+
+    @Advice.OnMethodExit
+    public static void exit(@Advice.Return(readOnly = false) Agent agent) {
+      final var installedAgent = InMemoryAgent.installedAgent();
+      if (installedAgent != null) {
+        agent = installedAgent;
+      }
+    }
+  }
+
+  /** Inlined on entry and exit of {@link NewRelic} static methods returning nothing. */
+  public static final class StaticCallAdvice {
+    private StaticCallAdvice() {}
+
+    @Advice.OnMethodEnter
+    public static boolean enter(
+        @Advice.Origin("#m") final String method, @Advice.AllArguments final Object[] args) {
+      return InMemoryAgent.enterStaticCall(method, args);
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void exit(@Advice.Enter final boolean entered) {
+      if (entered) {
+        InMemoryAgent.exitStaticCall();
+      }
+    }
+  }
+
+  /** Inlined on entry and exit of {@link Trace} methods. */
+  public static final class DispatcherAdvice {
+    private DispatcherAdvice() {}
+
+    @Advice.OnMethodEnter
+    public static boolean enter() {
+      return InMemoryAgent.startTransaction();
+    }
+
+    @Advice.OnMethodExit(onThrowable = Throwable.class)
+    public static void exit(@Advice.Enter final boolean started) {
+      if (started) {
+        InMemoryAgent.finishTransaction();
+      }
+    }
+  }
+}
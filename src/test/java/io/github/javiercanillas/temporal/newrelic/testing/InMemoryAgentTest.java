@@ -0,0 +1,135 @@
+package io.github.javiercanillas.temporal.newrelic.testing;
+
+import com.newrelic.api.agent.NewRelic;
+import io.github.javiercanillas.temporal.newrelic.context.NewRelicDistributedTraceContextPropagator;
+import io.github.javiercanillas.temporal.newrelic.interceptors.TraceActivityInboundCallsInterceptor;
+import io.github.javiercanillas.temporal.newrelic.metric.MetricScopeReporter;
+import io.temporal.activity.ActivityExecutionContext;
+import io.temporal.activity.ActivityInfo;
+import io.temporal.common.interceptors.ActivityInboundCallsInterceptor;
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.mockito.Mockito;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+class InMemoryAgentTest {
+
+  private static final int THREADS = 8;
+  private static final int EXECUTIONS = 200;
+
+  @Test
+  void interceptorAndPropagator() throws Exception {
+    final var propagator = new NewRelicDistributedTraceContextPropagator();
+    final var next = Mockito.mock(ActivityInboundCallsInterceptor.class);
+    final var context = Mockito.mock(ActivityExecutionContext.class);
+    final var info = Mockito.mock(ActivityInfo.class);
+    Mockito.doReturn(info).when(context).getInfo();
+    Mockito.doReturn("activityType").when(info).getActivityType();
+    final var error = new IllegalStateException("expected!");
+    Mockito.doAnswer(invocation -> {
+      if (NewRelic.getAgent().getTraceMetadata().getTraceId().isEmpty()) {
+        throw error;
+      }
+      return null;
+    }).when(next).execute(Mockito.any());
+
+    try (var agent = InMemoryAgent.install()) {
+      runConcurrently(() -> {
+        propagator.setCurrentContext(Map.of("newrelic", List.of("inbound")));
+        final var interceptor = new TraceActivityInboundCallsInterceptor("category", next);
+        interceptor.init(context);
+        interceptor.execute(Mockito.mock(ActivityInboundCallsInterceptor.ActivityInput.class));
+        return null;
+      });
+
+      final var transactions = agent.getTransactions();
+      Assertions.assertEquals(THREADS * EXECUTIONS, transactions.size());
+      transactions.forEach(transaction -> {
+        Assertions.assertEquals("category", transaction.getCategory());
+        Assertions.assertEquals("activityType", transaction.getName());
+        Assertions.assertEquals(
+            List.of(Map.of("newrelic", List.of("inbound"))), transaction.getAcceptedHeaders());
+        Assertions.assertTrue(transaction.getErrors().isEmpty());
+      });
+    }
+  }
+
+  @Test
+  void metricScopeReporter() throws Exception {
+    final var reporter = MetricScopeReporter.instance();
+    try (var agent = InMemoryAgent.install()) {
+      runConcurrently(() -> {
+        reporter.reportCounter("name", Map.of(), 2L);
+        return null;
+      });
+      final var counters =
+          agent.getMetrics().entrySet().stream()
+              .filter(entry -> entry.getKey().endsWith("/name"))
+              .map(Map.Entry::getValue)
+              .collect(Collectors.toList());
+      Assertions.assertEquals(1, counters.size());
+      Assertions.assertEquals(THREADS * EXECUTIONS, counters.get(0).getCount());
+      Assertions.assertEquals(THREADS * EXECUTIONS * 2d, counters.get(0).getTotal());
+    }
+  }
+
+  @Test
+  void metrics_recordedOnce() {
+    try (var agent = InMemoryAgent.install()) {
+      NewRelic.incrementCounter("static");
+      NewRelic.recordMetric("static", 2f);
+      NewRelic.recordResponseTimeMetric("static", 3L);
+      NewRelic.getAgent().getMetricAggregator().incrementCounter("aggregator", 4);
+      Assertions.assertEquals(3, agent.getMetric("static").getCount());
+      Assertions.assertEquals(6d, agent.getMetric("static").getTotal());
+      Assertions.assertEquals(1, agent.getMetric("aggregator").getCount());
+      Assertions.assertEquals(4d, agent.getMetric("aggregator").getTotal());
+    }
+  }
+
+  @Test
+  void close() {
+    final var agent = InMemoryAgent.install();
+    agent.close();
+    NewRelic.incrementCounter("name");
+    Assertions.assertEquals(0, agent.getMetric("name").getCount());
+    Assertions.assertNotSame(agent.getAgent(), NewRelic.getAgent());
+  }
+
+  @Test
+  void close_restoresClasses() {
+    InMemoryAgent.install().close();
+    try (var mockedNewRelic = Mockito.mockStatic(NewRelic.class)) {
+      NewRelic.incrementCounter("name");
+      mockedNewRelic.verify(() -> NewRelic.incrementCounter("name"));
+    }
+    // and it can be installed again afterwards
+    try (var agent = InMemoryAgent.install()) {
+      NewRelic.incrementCounter("name");
+      Assertions.assertEquals(1, agent.getMetric("name").getCount());
+    }
+  }
+
+  private static void runConcurrently(final Callable<Void> task) throws Exception {
+    final var executor = Executors.newFixedThreadPool(THREADS);
+    try {
+      final List<Future<Void>> futures =
+          executor.invokeAll(
+              IntStream.range(0, THREADS * EXECUTIONS)
+                  .mapToObj(i -> task)
+                  .collect(Collectors.toList()));
+      for (var future : futures) {
+        future.get();
+      }
+    } finally {
+      executor.shutdown();
+    }
+  }
+}